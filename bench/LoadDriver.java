@@ -0,0 +1,201 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a mix of till, search and report traffic against a database at a
+ * target rate from several concurrent clients, then reports throughput and
+ * p50/p99/p99.9 latency per operation.
+ *
+ * <p>The load is open-loop: each client has a schedule of start times spaced
+ * for its share of the rate (optionally with Poisson arrivals), and latency
+ * is measured from the scheduled start. A stall therefore shows up in the
+ * operations queued behind it as well, instead of quietly lowering the rate.
+ * With {@code --rate=0} every client runs flat out.
+ *
+ * <pre>
+ * java -cp "out:sqlite-jdbc-3.50.3.0.jar" LoadDriver --db=bench-data/pharmacy-1000000.db
+ *     [--clients=8] [--rate=200] [--duration=60] [--warmup=10] [--poisson]
+ *     [--mix=checkout:60,search:30,grid-load:5,sales-report:4,inventory-report:1]
+ *     [--medicines=1000000 --sales=10000000 --days=730]   to generate the database if it is missing
+ * </pre>
+ */
+public class LoadDriver {
+    private static final String DEFAULT_MIX = "checkout:60,search:30,grid-load:5,sales-report:4,inventory-report:1";
+    private static final int MAX_SAMPLES = 1 << 22; // latencies kept per client and operation
+
+    /** Latencies of one operation as seen by one client. */
+    private static final class Samples {
+        long[] nanos = new long[1024];
+        int count;
+        long errors;
+
+        void add(long latency) {
+            if (count == nanos.length) {
+                if (count >= MAX_SAMPLES) return;
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = latency;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) throw new IllegalArgumentException("Unknown argument: " + arg);
+            int eq = arg.indexOf('=');
+            options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "" : arg.substring(eq + 1).replace("_", ""));
+        }
+        Path db = Paths.get(options.getOrDefault("db", "bench-data/pharmacy-load.db"));
+        int clients = Integer.parseInt(options.getOrDefault("clients", "8"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+        double duration = Double.parseDouble(options.getOrDefault("duration", "60"));
+        double warmup = Double.parseDouble(options.getOrDefault("warmup", "10"));
+        boolean poisson = options.containsKey("poisson");
+
+        if (!Files.exists(db)) {
+            if (db.getParent() != null) Files.createDirectories(db.getParent());
+            System.out.println("Generating " + db + "...");
+            new SyntheticDataGenerator(Long.parseLong(options.getOrDefault("seed", "42")),
+                    Integer.parseInt(options.getOrDefault("medicines", "1000000")),
+                    Long.parseLong(options.getOrDefault("sales", "10000000")),
+                    Integer.parseInt(options.getOrDefault("days", "730"))).generate(db);
+        }
+
+        try (Workload workload = new Workload(db)) {
+            List<Workload.Task> tasks = new ArrayList<>();
+            List<Integer> weights = new ArrayList<>();
+            for (String entry : options.getOrDefault("mix", DEFAULT_MIX).split(",")) {
+                String[] parts = entry.split(":");
+                tasks.add(workload.task(parts[0].trim()));
+                weights.add(parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1);
+            }
+            int[] cumulative = new int[weights.size()];
+            for (int i = 0, sum = 0; i < cumulative.length; i++) {
+                sum += weights.get(i);
+                cumulative[i] = sum;
+            }
+
+            System.out.printf("%d clients, %s, %.0f s warm-up then %.0f s measured, mix %s%n", clients,
+                    rate > 0 ? String.format("%.1f ops/s%s", rate, poisson ? " (Poisson)" : "") : "unthrottled",
+                    warmup, duration, options.getOrDefault("mix", DEFAULT_MIX));
+            run(tasks, cumulative, clients, rate, warmup, duration, poisson);
+        }
+        System.exit(0);
+    }
+
+    private static void run(List<Workload.Task> tasks, int[] cumulative, int clients, double rate,
+                            double warmup, double duration, boolean poisson) throws InterruptedException {
+        long begin = System.nanoTime() + 100_000_000L; // give every client the same starting line
+        long measureFrom = begin + (long) (warmup * 1e9);
+        long end = measureFrom + (long) (duration * 1e9);
+        double interval = rate > 0 ? clients * 1e9 / rate : 0; // each client's share of the rate
+        Samples[][] samples = new Samples[clients][tasks.size()];
+        AtomicLong completed = new AtomicLong();
+
+        Thread[] workers = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            Samples[] mine = samples[c];
+            for (int t = 0; t < tasks.size(); t++) mine[t] = new Samples();
+            long offset = (long) (interval * c / clients); // stagger the clients across one interval
+            workers[c] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long scheduled = begin + offset;
+                while (true) {
+                    long now = System.nanoTime();
+                    if (interval > 0) {
+                        if (scheduled - now > 0) LockSupport.parkNanos(scheduled - now);
+                    } else {
+                        scheduled = now;
+                    }
+                    if (scheduled - end >= 0) return;
+
+                    int pick = random.nextInt(cumulative[cumulative.length - 1]);
+                    int t = 0;
+                    while (cumulative[t] <= pick) t++;
+                    boolean failed = false;
+                    try {
+                        tasks.get(t).operation.run(random);
+                    } catch (Exception e) {
+                        failed = true;
+                    }
+                    long latency = System.nanoTime() - scheduled; // from when it should have started
+                    if (scheduled - measureFrom >= 0) {
+                        if (failed) mine[t].errors++;
+                        else mine[t].add(latency);
+                    }
+                    completed.incrementAndGet();
+                    if (interval > 0) {
+                        scheduled += poisson ? (long) (-Math.log(1 - random.nextDouble()) * interval) : (long) interval;
+                    }
+                }
+            }, "load-client-" + c);
+            workers[c].start();
+        }
+
+        long lastCount = 0;
+        long lastTime = System.nanoTime();
+        while (System.nanoTime() - end < 0) {
+            Thread.sleep(Math.min(5000, Math.max(1, (end - System.nanoTime()) / 1_000_000)));
+            long now = System.nanoTime();
+            long count = completed.get();
+            System.out.printf("  %5.0f s  %,10d ops  %,9.1f ops/s%s%n", (now - begin) / 1e9, count,
+                    (count - lastCount) / ((now - lastTime) / 1e9), now - measureFrom < 0 ? "  (warm-up)" : "");
+            lastCount = count;
+            lastTime = now;
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        report(tasks, samples, duration);
+    }
+
+    private static void report(List<Workload.Task> tasks, Samples[][] samples, double duration) {
+        System.out.println();
+        System.out.printf("%-18s %10s %10s %10s %10s %10s %10s %8s%n",
+                "Operation", "Count", "ops/s", "p50 (ms)", "p99 (ms)", "p99.9 (ms)", "max (ms)", "Errors");
+        List<long[]> everything = new ArrayList<>();
+        long totalErrors = 0;
+        for (int t = 0; t < tasks.size(); t++) {
+            int count = 0;
+            long errors = 0;
+            for (Samples[] client : samples) {
+                count += client[t].count;
+                errors += client[t].errors;
+            }
+            long[] merged = new long[count];
+            int at = 0;
+            for (Samples[] client : samples) {
+                System.arraycopy(client[t].nanos, 0, merged, at, client[t].count);
+                at += client[t].count;
+            }
+            Arrays.sort(merged);
+            everything.add(merged);
+            totalErrors += errors;
+            printRow(tasks.get(t).name, merged, errors, duration);
+        }
+
+        long[] all = everything.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        printRow("total", all, totalErrors, duration);
+    }
+
+    private static void printRow(String name, long[] sorted, long errors, double duration) {
+        System.out.printf("%-18s %,10d %10.1f %10.2f %10.2f %10.2f %10.2f %,8d%n", name, sorted.length,
+                sorted.length / duration, percentile(sorted, 0.50), percentile(sorted, 0.99),
+                percentile(sorted, 0.999), sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6, errors);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.min(sorted.length - 1, Math.max(0, Math.ceil(p * sorted.length) - 1));
+        return sorted[index] / 1e6;
+    }
+}
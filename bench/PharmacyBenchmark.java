@@ -0,0 +1,254 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Headless benchmarks for the work behind the dashboard's busiest actions:
+ * checkout, search, the two medicine loads and the sales and inventory
+ * reports, as defined by {@link Workload}, against databases of a given
+ * size made by {@link SyntheticDataGenerator}.
+ *
+ * <p>Runs JMH-style: warm-up iterations that are thrown away, then timed
+ * iterations. For each benchmark it reports throughput (mean and spread
+ * over the iterations), latency percentiles over every operation, and the
+ * bytes allocated per operation across all threads.
+ *
+ * <pre>
+ * java -cp "out:sqlite-jdbc-3.50.3.0.jar" PharmacyBenchmark
+ *     [--rows=10000,1000000]     database sizes: this many batches, and as many sales
+ *     [--bench=checkout,search]  a subset of the benchmarks, by name
+ *     [--warmup=3] [--iterations=5] [--time=2]   iterations and seconds per iteration
+ *     [--threads=1]              concurrent callers
+ *     [--dir=bench-data]         where the databases are generated and kept
+ *     [--csv=results.csv]        also write the results as CSV
+ * </pre>
+ *
+ * <p>Databases are generated once and reused. Checkout writes real sales,
+ * so each run adds a few thousand rows to the one it sells from.
+ */
+public class PharmacyBenchmark {
+    private static final int MAX_SAMPLES = 1 << 22; // latencies kept per iteration and thread
+
+    private static final class Result {
+        final String benchmark;
+        final int rows;
+        final double[] throughputs; // ops/s, one per iteration
+        final long[] latencies;     // nanoseconds, sorted
+        final long operations;
+        final long allocatedBytes;
+
+        Result(String benchmark, int rows, double[] throughputs, long[] latencies, long operations, long allocatedBytes) {
+            this.benchmark = benchmark;
+            this.rows = rows;
+            this.throughputs = throughputs;
+            this.latencies = latencies;
+            this.operations = operations;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        double meanThroughput() {
+            return Arrays.stream(throughputs).average().orElse(0);
+        }
+
+        double throughputError() {
+            double mean = meanThroughput();
+            double sum = 0;
+            for (double t : throughputs) {
+                sum += (t - mean) * (t - mean);
+            }
+            return throughputs.length > 1 ? Math.sqrt(sum / (throughputs.length - 1)) : 0;
+        }
+
+        double percentileMicros(double p) {
+            if (latencies.length == 0) return 0;
+            int index = (int) Math.min(latencies.length - 1, Math.ceil(p * latencies.length) - 1);
+            return latencies[Math.max(0, index)] / 1000.0;
+        }
+
+        long bytesPerOperation() {
+            return operations == 0 ? 0 : allocatedBytes / operations;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int[] sizes = Arrays.stream(options.getOrDefault("rows", "10000,1000000").split(","))
+                .mapToInt(s -> Integer.parseInt(s.trim().replace("_", ""))).toArray();
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "3"));
+        int iterations = Integer.parseInt(options.getOrDefault("iterations", "5"));
+        double seconds = Double.parseDouble(options.getOrDefault("time", "2"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "1"));
+        Path dir = Paths.get(options.getOrDefault("dir", "bench-data"));
+        List<String> only = options.containsKey("bench")
+                ? Arrays.asList(options.get("bench").split(",")) : null;
+        Files.createDirectories(dir);
+
+        List<Result> results = new ArrayList<>();
+        for (int rows : sizes) {
+            Path file = dir.resolve("pharmacy-" + rows + ".db");
+            if (!Files.exists(file)) {
+                System.out.printf("Generating %s (%,d medicines, %,d sales)...%n", file, rows, rows);
+                new SyntheticDataGenerator(42, rows, rows, 365).generate(file);
+            }
+
+            try (Workload workload = new Workload(file)) {
+                for (Workload.Task task : workload.tasks()) {
+                    if (only != null && !only.contains(task.name)) continue;
+                    System.out.printf("# %s, %,d rows: %s%n", task.name, rows, task.description);
+                    Result result = run(task, rows, warmup, iterations, seconds, threads);
+                    results.add(result);
+                    System.out.printf("  %,.1f ops/s, p50 %,.1f us, p99 %,.1f us%n",
+                            result.meanThroughput(), result.percentileMicros(0.50), result.percentileMicros(0.99));
+                }
+            }
+        }
+
+        System.out.println();
+        printTable(results, threads);
+        if (options.containsKey("csv")) {
+            writeCsv(Paths.get(options.get("csv")), results, threads);
+        }
+        System.exit(0); // the executor threads are daemons, but the journal wants a clean exit
+    }
+
+    private static Result run(Workload.Task task, int rows, int warmup, int iterations, double seconds, int threads)
+            throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            iteration(task, seconds, threads);
+        }
+
+        double[] throughputs = new double[iterations];
+        List<long[]> samples = new ArrayList<>();
+        long operations = 0;
+        long allocated = 0;
+        for (int i = 0; i < iterations; i++) {
+            long allocatedBefore = allocatedBytes();
+            Iteration it = iteration(task, seconds, threads);
+            allocated += allocatedBytes() - allocatedBefore;
+            throughputs[i] = it.operations / (it.nanos / 1e9);
+            operations += it.operations;
+            samples.addAll(it.latencies);
+        }
+
+        int total = samples.stream().mapToInt(s -> s.length).sum();
+        long[] latencies = new long[total];
+        int at = 0;
+        for (long[] s : samples) {
+            System.arraycopy(s, 0, latencies, at, s.length);
+            at += s.length;
+        }
+        Arrays.sort(latencies);
+        return new Result(task.name, rows, throughputs, latencies, operations, allocated);
+    }
+
+    private static final class Iteration {
+        long operations;
+        long nanos;
+        final List<long[]> latencies = new ArrayList<>();
+    }
+
+    // every thread runs the operation back to back until the time is up
+    private static Iteration iteration(Workload.Task task, double seconds, int threads) throws Exception {
+        long budget = (long) (seconds * 1e9);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        long[][] perThread = new long[threads][];
+        int[] counts = new int[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            workers[t] = new Thread(() -> {
+                long[] latencies = new long[1024];
+                int n = 0;
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    long deadline = System.nanoTime() + budget;
+                    long now;
+                    do {
+                        long began = System.nanoTime();
+                        task.operation.run(random);
+                        now = System.nanoTime();
+                        if (n == latencies.length && n < MAX_SAMPLES) latencies = Arrays.copyOf(latencies, n * 2);
+                        if (n < latencies.length) latencies[n++] = now - began;
+                    } while (now < deadline);
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                }
+                perThread[index] = latencies;
+                counts[index] = n;
+            }, "bench-" + task.name + "-" + t);
+            workers[t].start();
+        }
+
+        long started = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Iteration result = new Iteration();
+        result.nanos = System.nanoTime() - started;
+        if (failure.get() != null) throw failure.get();
+        for (int t = 0; t < threads; t++) {
+            result.operations += counts[t];
+            result.latencies.add(Arrays.copyOf(perThread[t], counts[t]));
+        }
+        return result;
+    }
+
+    // across every thread, since the work happens on the data-access threads, not the caller
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+
+    private static void printTable(List<Result> results, int threads) {
+        System.out.printf("Benchmark            %10s  %7s  %15s  %10s  %10s  %10s  %12s%n",
+                "Rows", "Threads", "Score (ops/s)", "p50 (us)", "p99 (us)", "p99.9 (us)", "Alloc (B/op)");
+        for (Result r : results) {
+            System.out.printf("%-20s %,10d  %7d  %8.1f +- %-5.1f  %10.1f  %10.1f  %10.1f  %,12d%n",
+                    r.benchmark, r.rows, threads, r.meanThroughput(), r.throughputError(),
+                    r.percentileMicros(0.50), r.percentileMicros(0.99), r.percentileMicros(0.999),
+                    r.bytesPerOperation());
+        }
+    }
+
+    private static void writeCsv(Path file, List<Result> results, int threads) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("benchmark,rows,threads,ops_per_s,ops_per_s_error,p50_us,p99_us,p999_us,alloc_bytes_per_op");
+            for (Result r : results) {
+                out.printf(Locale.ROOT, "%s,%d,%d,%.2f,%.2f,%.2f,%.2f,%.2f,%d%n",
+                        r.benchmark, r.rows, threads, r.meanThroughput(), r.throughputError(),
+                        r.percentileMicros(0.50), r.percentileMicros(0.99), r.percentileMicros(0.999),
+                        r.bytesPerOperation());
+            }
+        }
+        System.out.println("Results written to " + file);
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) throw new IllegalArgumentException("Unknown argument: " + arg);
+            int eq = arg.indexOf('=');
+            options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "" : arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
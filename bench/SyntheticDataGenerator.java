@@ -0,0 +1,426 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Fills a database with a production-sized, plausible pharmacy: a catalog of
+ * products built from real generic names, strengths and forms, each stocked
+ * in several batches, and years of sales history. The same seed always
+ * produces the same data.
+ *
+ * <ul>
+ * <li>Batches are of different ages. Expiry follows from manufacture date
+ * plus the form's shelf life, so most batches are good for months, some are
+ * close to expiry and a few percent have already expired. Older batches have
+ * less stock left.</li>
+ * <li>Sales favour a few best sellers (Zipf). Each therapeutic category has
+ * its own season: cold and flu remedies peak in the cold dry months,
+ * antimalarials and oral rehydration in the rains. Weekends, month-end
+ * paydays and slow year-on-year growth shape the daily totals.</li>
+ * </ul>
+ *
+ * <p>Rows go in as batched inserts, one transaction per {@link #CHUNK}. The
+ * search index trigger is set aside while medicines load and the index is
+ * rebuilt once at the end, as is the daily rollup.
+ *
+ * <pre>
+ * java -cp "out:sqlite-jdbc-3.50.3.0.jar" SyntheticDataGenerator --db=big.db
+ *     [--medicines=1000000] [--sales=10000000] [--days=730] [--seed=42]
+ * </pre>
+ */
+public class SyntheticDataGenerator {
+    static final int CHUNK = 100_000;
+    private static final int BATCHES_PER_PRODUCT = 8; // on average
+
+    private enum Category {
+        // peak day of year (southern hemisphere) and how strongly sales swing around it
+        PAIN(0, 0.0), CHRONIC(0, 0.0), ANTIBIOTIC(200, 0.15), RESPIRATORY(182, 0.6),
+        ANTIMALARIAL(45, 0.7), GASTRO(20, 0.4), ALLERGY(260, 0.5), SKIN(330, 0.2), VITAMIN(0, 0.1);
+
+        final int peakDay;
+        final double swing;
+
+        Category(int peakDay, double swing) {
+            this.peakDay = peakDay;
+            this.swing = swing;
+        }
+
+        double season(int dayOfYear) {
+            return 1 + swing * Math.cos(2 * Math.PI * (dayOfYear - peakDay) / 365.0);
+        }
+    }
+
+    private static final class Generic {
+        final String name;
+        final Category category;
+        final String[] strengths;
+        final String[] forms;
+
+        Generic(String name, Category category, String strengths, String forms) {
+            this.name = name;
+            this.category = category;
+            this.strengths = strengths.split(",");
+            this.forms = forms.split(",");
+        }
+    }
+
+    private static final Generic[] GENERICS = {
+            new Generic("Paracetamol", Category.PAIN, "500mg,1g,120mg/5ml", "Tablets,Syrup,Suppositories"),
+            new Generic("Ibuprofen", Category.PAIN, "200mg,400mg,100mg/5ml", "Tablets,Suspension"),
+            new Generic("Aspirin", Category.PAIN, "75mg,300mg", "Tablets,Dispersible Tablets"),
+            new Generic("Diclofenac", Category.PAIN, "50mg,75mg/3ml,1%", "Tablets,Injection,Gel"),
+            new Generic("Tramadol", Category.PAIN, "50mg,100mg", "Capsules,Injection"),
+            new Generic("Amoxicillin", Category.ANTIBIOTIC, "250mg,500mg,125mg/5ml", "Capsules,Suspension"),
+            new Generic("Co-trimoxazole", Category.ANTIBIOTIC, "480mg,960mg,240mg/5ml", "Tablets,Suspension"),
+            new Generic("Ciprofloxacin", Category.ANTIBIOTIC, "250mg,500mg", "Tablets"),
+            new Generic("Azithromycin", Category.ANTIBIOTIC, "250mg,500mg,200mg/5ml", "Tablets,Suspension"),
+            new Generic("Doxycycline", Category.ANTIBIOTIC, "100mg", "Capsules"),
+            new Generic("Metronidazole", Category.ANTIBIOTIC, "200mg,400mg,200mg/5ml", "Tablets,Suspension"),
+            new Generic("Flucloxacillin", Category.ANTIBIOTIC, "250mg,500mg", "Capsules"),
+            new Generic("Cefalexin", Category.ANTIBIOTIC, "250mg,500mg", "Capsules,Suspension"),
+            new Generic("Metformin", Category.CHRONIC, "500mg,850mg,1g", "Tablets"),
+            new Generic("Glibenclamide", Category.CHRONIC, "5mg", "Tablets"),
+            new Generic("Amlodipine", Category.CHRONIC, "5mg,10mg", "Tablets"),
+            new Generic("Enalapril", Category.CHRONIC, "5mg,10mg,20mg", "Tablets"),
+            new Generic("Losartan", Category.CHRONIC, "50mg,100mg", "Tablets"),
+            new Generic("Hydrochlorothiazide", Category.CHRONIC, "25mg,50mg", "Tablets"),
+            new Generic("Atorvastatin", Category.CHRONIC, "10mg,20mg,40mg", "Tablets"),
+            new Generic("Omeprazole", Category.GASTRO, "20mg,40mg", "Capsules"),
+            new Generic("Ranitidine", Category.GASTRO, "150mg", "Tablets"),
+            new Generic("Loperamide", Category.GASTRO, "2mg", "Capsules"),
+            new Generic("Oral Rehydration Salts", Category.GASTRO, "20.5g", "Sachets"),
+            new Generic("Zinc Sulphate", Category.GASTRO, "20mg", "Dispersible Tablets"),
+            new Generic("Hyoscine", Category.GASTRO, "10mg", "Tablets,Injection"),
+            new Generic("Artemether/Lumefantrine", Category.ANTIMALARIAL, "20/120mg,80/480mg", "Tablets,Dispersible Tablets"),
+            new Generic("Artesunate", Category.ANTIMALARIAL, "60mg,50mg", "Injection,Tablets"),
+            new Generic("Quinine", Category.ANTIMALARIAL, "300mg,600mg/2ml", "Tablets,Injection"),
+            new Generic("Sulfadoxine/Pyrimethamine", Category.ANTIMALARIAL, "500/25mg", "Tablets"),
+            new Generic("Salbutamol", Category.RESPIRATORY, "100mcg,4mg,2mg/5ml", "Inhaler,Tablets,Syrup"),
+            new Generic("Beclometasone", Category.RESPIRATORY, "100mcg,250mcg", "Inhaler"),
+            new Generic("Bromhexine", Category.RESPIRATORY, "8mg,4mg/5ml", "Tablets,Syrup"),
+            new Generic("Guaifenesin", Category.RESPIRATORY, "100mg/5ml", "Syrup"),
+            new Generic("Pseudoephedrine", Category.RESPIRATORY, "60mg,30mg/5ml", "Tablets,Syrup"),
+            new Generic("Dextromethorphan", Category.RESPIRATORY, "15mg/5ml", "Syrup"),
+            new Generic("Xylometazoline", Category.RESPIRATORY, "0.1%,0.05%", "Nasal Spray,Nasal Drops"),
+            new Generic("Chlorphenamine", Category.ALLERGY, "4mg,2mg/5ml", "Tablets,Syrup"),
+            new Generic("Cetirizine", Category.ALLERGY, "10mg,5mg/5ml", "Tablets,Syrup"),
+            new Generic("Loratadine", Category.ALLERGY, "10mg", "Tablets"),
+            new Generic("Promethazine", Category.ALLERGY, "25mg,5mg/5ml", "Tablets,Syrup"),
+            new Generic("Hydrocortisone", Category.SKIN, "1%,100mg", "Cream,Injection"),
+            new Generic("Clotrimazole", Category.SKIN, "1%,100mg", "Cream,Pessaries"),
+            new Generic("Calamine", Category.SKIN, "15%", "Lotion"),
+            new Generic("Benzyl Benzoate", Category.SKIN, "25%", "Emulsion"),
+            new Generic("Ferrous Sulphate", Category.VITAMIN, "200mg", "Tablets"),
+            new Generic("Folic Acid", Category.VITAMIN, "5mg", "Tablets"),
+            new Generic("Vitamin C", Category.VITAMIN, "100mg,500mg", "Tablets,Effervescent Tablets"),
+            new Generic("Multivitamin", Category.VITAMIN, "", "Tablets,Syrup"),
+    };
+    private static final String[] SUPPLIERS = {
+            "Medipharm", "Pharmanova", "Cipla", "Sun Pharma", "Macleods", "Strides", "Aspen", "Novartis", "GSK", "Ajanta"
+    };
+    private static final double[] WEEKDAY = {1.0, 0.95, 0.95, 1.0, 1.15, 1.2, 0.6}; // Monday first
+
+    private final SplittableRandom random;
+    private final int medicines;
+    private final long sales;
+    private final int days;
+
+    // one entry per product
+    private String[] names;
+    private Category[] categories;
+    private long[] prices; // ngwee
+    private int[] firstBatch; // batch ids of product p are firstBatch[p] .. firstBatch[p + 1] - 1
+    private double[] popularity;
+
+    SyntheticDataGenerator(long seed, int medicines, long sales, int days) {
+        if (medicines <= 0 || sales < 0 || days <= 0) throw new IllegalArgumentException("sizes must be positive");
+        this.random = new SplittableRandom(seed);
+        this.medicines = medicines;
+        this.sales = sales;
+        this.days = days;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            options.put(arg.substring(2, eq), arg.substring(eq + 1).replace("_", ""));
+        }
+        Path db = Paths.get(options.getOrDefault("db", "pharmacy-synthetic.db"));
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(
+                Long.parseLong(options.getOrDefault("seed", "42")),
+                Integer.parseInt(options.getOrDefault("medicines", "1000000")),
+                Long.parseLong(options.getOrDefault("sales", "10000000")),
+                Integer.parseInt(options.getOrDefault("days", "730")));
+        generator.generate(db);
+        System.exit(0);
+    }
+
+    /** Creates or extends {@code file}, bringing its schema up to date first. */
+    void generate(Path file) throws Exception {
+        DataAccessExecutor dataAccess = new DataAccessExecutor("jdbc:sqlite:" + file);
+        DataAccessExecutor.await(dataAccess.write(db -> {
+            SchemaMigrations.migrate(db.connection());
+            generate(db);
+            return null;
+        }));
+    }
+
+    /** Writes the catalog and the sales history. Run on the writer thread. */
+    void generate(DataSession db) throws SQLException {
+        long started = System.nanoTime();
+        Connection connection = db.connection();
+        int baseId;
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM medicines")) {
+            baseId = rs.next() ? rs.getInt(1) : 0;
+        }
+
+        planProducts(baseId + 1);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TRIGGER IF EXISTS medicines_fts_insert"); // one rebuild beats a million trigger calls
+        }
+        insertMedicines(db);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("INSERT INTO medicines_fts(medicines_fts) VALUES ('rebuild')");
+        }
+        MedicineSearch.createIndex(connection); // puts the trigger back
+        System.out.printf("  %,d medicines (%,d products) in %.1f s%n",
+                medicines, names.length, (System.nanoTime() - started) / 1e9);
+
+        insertSales(db);
+        db.sales.rebuildDailyRollup();
+        System.out.printf("  %,d sales over %d days, done in %.1f s%n", sales, days, (System.nanoTime() - started) / 1e9);
+    }
+
+    private void planProducts(int firstId) {
+        int products = Math.max(1, medicines / BATCHES_PER_PRODUCT);
+        names = new String[products];
+        categories = new Category[products];
+        prices = new long[products];
+        firstBatch = new int[products + 1];
+        popularity = new double[products];
+
+        int variants = 0;
+        int[] firstVariant = new int[GENERICS.length];
+        for (int g = 0; g < GENERICS.length; g++) {
+            firstVariant[g] = variants;
+            variants += GENERICS[g].strengths.length * GENERICS[g].forms.length;
+        }
+        for (int p = 0; p < products; p++) {
+            int variant = p % variants;
+            int round = p / variants; // once every variant exists, the same one from another supplier
+            int g = 0;
+            while (g + 1 < GENERICS.length && firstVariant[g + 1] <= variant) g++;
+            Generic generic = GENERICS[g];
+            int v = variant - firstVariant[g];
+            String strength = generic.strengths[v % generic.strengths.length];
+            String form = generic.forms[v / generic.strengths.length % generic.forms.length];
+            StringBuilder name = new StringBuilder(generic.name);
+            if (!strength.isEmpty()) name.append(' ').append(strength);
+            name.append(' ').append(form);
+            if (round > 0) {
+                name.append(" (").append(SUPPLIERS[(round - 1) % SUPPLIERS.length]);
+                if (round > SUPPLIERS.length) name.append(' ').append((round - 1) / SUPPLIERS.length + 1);
+                name.append(')');
+            }
+            names[p] = name.toString();
+            categories[p] = generic.category;
+            prices[p] = money(Math.min(2000, Math.max(1, Math.exp(Math.log(40) + random.nextGaussian()))));
+            popularity[p] = 1.0 / (1 + random.nextInt(products)); // Zipf over a shuffled rank
+        }
+
+        // batches per product: at least one, busier products stocked more often
+        double total = Arrays.stream(popularity).map(Math::sqrt).sum();
+        int id = firstId;
+        int left = medicines;
+        double carry = 0;
+        for (int p = 0; p < products; p++) {
+            firstBatch[p] = id;
+            double exact = (medicines - products) * Math.sqrt(popularity[p]) / total + carry;
+            int share = p == products - 1 ? left : 1 + (int) Math.min(left - (products - p), Math.floor(exact));
+            carry = exact - (share - 1);
+            id += share;
+            left -= share;
+        }
+        firstBatch[products] = id;
+    }
+
+    private void insertMedicines(DataSession db) throws SQLException {
+        LocalDate today = LocalDate.now();
+        try (PreparedStatement insert = db.connection().prepareStatement("INSERT INTO medicines " +
+                "(id, name, batch_number, expiry_date, quantity, price_ngwee, reorder_level) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            int[] productCursor = {0}; // batches go in product by product
+            for (int written = 0; written < medicines; written += CHUNK) {
+                int first = written;
+                db.inTransaction(() -> {
+                    int p = productCursor[0];
+                    for (int i = first; i < Math.min(medicines, first + CHUNK); i++) {
+                        int id = firstBatch[0] + i;
+                        while (id >= firstBatch[p + 1]) p++;
+                        String name = names[p];
+                        int shelfDays = name.contains("Tablets") || name.contains("Capsules") ? 1095
+                                : name.contains("Drops") || name.contains("Injection") ? 540 : 730;
+                        int age = (int) (shelfDays * 1.05 * Math.pow(random.nextDouble(), 1.5)); // skewed to recent stock
+                        LocalDate made = today.minusDays(age);
+                        int initial = (int) (50 + 2000 * Math.sqrt(popularity[p]) * (0.5 + random.nextDouble()));
+                        int left = (int) Math.max(0, Math.round(initial * Math.max(0, 1 - (double) age / shelfDays)
+                                * (0.3 + 0.7 * random.nextDouble())));
+
+                        insert.setInt(1, id);
+                        insert.setString(2, names[p]);
+                        insert.setString(3, batchNumber(names[p], made, id));
+                        insert.setString(4, made.plusDays(shelfDays).toString());
+                        insert.setInt(5, left);
+                        insert.setLong(6, Math.round(prices[p] * (0.95 + 0.15 * random.nextDouble())));
+                        insert.setInt(7, Math.max(5, initial / 10));
+                        insert.addBatch();
+                    }
+                    productCursor[0] = p;
+                    return insert.executeBatch();
+                });
+            }
+        }
+    }
+
+    private void insertSales(DataSession db) throws SQLException {
+        LocalDate start = LocalDate.now().minusDays(days - 1);
+        long[] perDay = salesPerDay(start);
+
+        // products by category, each with its cumulative popularity, so a sale picks its category by season first
+        Category[] all = Category.values();
+        int[][] byCategory = new int[all.length][];
+        double[][] cumulative = new double[all.length][];
+        double[] categoryWeight = new double[all.length];
+        for (Category c : all) {
+            int[] members = IntStream.range(0, names.length).filter(p -> categories[p] == c).toArray();
+            byCategory[c.ordinal()] = members;
+            double[] cum = new double[members.length];
+            double sum = 0;
+            for (int i = 0; i < members.length; i++) {
+                sum += popularity[members[i]];
+                cum[i] = sum;
+            }
+            cumulative[c.ordinal()] = cum;
+            categoryWeight[c.ordinal()] = sum;
+        }
+
+        try (PreparedStatement insert = db.connection().prepareStatement("INSERT INTO sales " +
+                "(medicine_id, medicine_name, quantity, price_per_unit_ngwee, total_ngwee, sale_date) VALUES (?, ?, ?, ?, ?, ?)")) {
+            int day = 0;
+            long leftToday = perDay.length > 0 ? perDay[0] : 0;
+            long written = 0;
+            while (written < sales) {
+                long chunkEnd = Math.min(sales, written + CHUNK);
+                long[] state = {day, leftToday};
+                long from = written;
+                db.inTransaction(() -> {
+                    int d = (int) state[0];
+                    long left = state[1];
+                    double[] weights = seasonalWeights(start.plusDays(d), all, categoryWeight);
+                    for (long i = from; i < chunkEnd; i++) {
+                        while (left == 0 && d + 1 < perDay.length) {
+                            left = perDay[++d];
+                            weights = seasonalWeights(start.plusDays(d), all, categoryWeight);
+                        }
+                        left--;
+                        int c = pick(weights);
+                        int[] members = byCategory[c];
+                        int p = members[Math.min(members.length - 1, search(cumulative[c], random.nextDouble() * categoryWeight[c]))];
+                        int quantity = 1;
+                        while (quantity < 20 && random.nextDouble() < 0.35) quantity++;
+
+                        insert.setInt(1, firstBatch[p] + random.nextInt(firstBatch[p + 1] - firstBatch[p]));
+                        insert.setString(2, names[p]);
+                        insert.setInt(3, quantity);
+                        insert.setLong(4, prices[p]);
+                        insert.setLong(5, quantity * prices[p]);
+                        insert.setString(6, start.plusDays(d).toString());
+                        insert.addBatch();
+                    }
+                    state[0] = d;
+                    state[1] = left;
+                    return insert.executeBatch();
+                });
+                day = (int) state[0];
+                leftToday = state[1];
+                written = chunkEnd;
+            }
+        }
+    }
+
+    // daily totals shaped by weekday, payday and growth, summing to exactly {@code sales}
+    private long[] salesPerDay(LocalDate start) {
+        double[] weight = new double[days];
+        double total = 0;
+        for (int d = 0; d < days; d++) {
+            LocalDate date = start.plusDays(d);
+            double w = WEEKDAY[date.getDayOfWeek().getValue() - DayOfWeek.MONDAY.getValue()];
+            if (date.getDayOfMonth() >= 25) w *= 1.15;
+            w *= 1 + 0.10 * d / 365.0;
+            w *= 0.9 + 0.2 * random.nextDouble();
+            weight[d] = w;
+            total += w;
+        }
+        long[] perDay = new long[days];
+        long assigned = 0;
+        double carry = 0;
+        for (int d = 0; d < days; d++) {
+            double exact = sales * weight[d] / total + carry;
+            perDay[d] = d == days - 1 ? sales - assigned : (long) Math.floor(exact);
+            carry = exact - perDay[d];
+            assigned += perDay[d];
+        }
+        return perDay;
+    }
+
+    private static double[] seasonalWeights(LocalDate date, Category[] all, double[] categoryWeight) {
+        double[] cumulative = new double[all.length];
+        double sum = 0;
+        for (Category c : all) {
+            sum += categoryWeight[c.ordinal()] * c.season(date.getDayOfYear());
+            cumulative[c.ordinal()] = sum;
+        }
+        return cumulative;
+    }
+
+    // an empty category adds no weight, so it is never picked
+    private int pick(double[] cumulative) {
+        return search(cumulative, random.nextDouble() * cumulative[cumulative.length - 1]);
+    }
+
+    // first index whose cumulative weight exceeds {@code target}
+    private static int search(double[] cumulative, double target) {
+        int lo = 0;
+        int hi = cumulative.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cumulative[mid] > target) hi = mid;
+            else lo = mid + 1;
+        }
+        return lo;
+    }
+
+    private static String batchNumber(String name, LocalDate made, int id) {
+        String letters = name.replaceAll("[^A-Za-z]", "");
+        String prefix = (letters + "XXX").substring(0, 3).toUpperCase();
+        return String.format("%s-%02d%02d-%d", prefix, made.getYear() % 100, made.getMonthValue(), id);
+    }
+
+    // kwacha to whole ngwee
+    private static long money(double amount) {
+        return Math.round(amount * 100);
+    }
+}
@@ -0,0 +1,138 @@
+import java.io.Writer;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The dashboard's data layer started headless, the way the dashboard starts
+ * it, and the operations behind its busiest actions. Shared by
+ * {@link PharmacyBenchmark} and {@link LoadDriver}, so both measure exactly
+ * what the panels run.
+ */
+final class Workload implements AutoCloseable {
+
+    /** One call of the code under test. */
+    @FunctionalInterface
+    interface Operation {
+        void run(ThreadLocalRandom random) throws Exception;
+    }
+
+    static final class Task {
+        final String name;
+        final String description;
+        final Operation operation;
+
+        Task(String name, String description, Operation operation) {
+            this.name = name;
+            this.description = description;
+            this.operation = operation;
+        }
+    }
+
+    final DataAccessExecutor dataAccess;
+    final EventBus events = new EventBus(Runnable::run);
+    final SalesAnalytics analytics = new SalesAnalytics();
+    final StockLedger stockLedger;
+    final SalesJournal salesJournal;
+    private final String[] names;       // medicines with stock to sell
+    private final String[] searchTerms; // what people type: the start of a word in a name
+
+    Workload(Path file) throws Exception {
+        String url = "jdbc:sqlite:" + file;
+        this.dataAccess = new DataAccessExecutor(url);
+        this.stockLedger = new StockLedger(dataAccess, events);
+        this.salesJournal = new SalesJournal(SalesJournal.pathFor(url), dataAccess, events, analytics);
+        DataAccessExecutor.await(dataAccess.write(db -> {
+            SchemaMigrations.migrate(db.connection());
+            salesJournal.recover(db);
+            return null;
+        }));
+        salesJournal.start();
+        stockLedger.start();
+        DataAccessExecutor.await(dataAccess.write(db -> null)); // queued behind the ledger's load
+        DataAccessExecutor.await(dataAccess.read(db -> {
+            analytics.catchUp(db);
+            return null;
+        }));
+
+        List<String> stocked = DataAccessExecutor.await(dataAccess.read(db -> {
+            List<String> found = new ArrayList<>();
+            try (PreparedStatement pstmt = db.connection().prepareStatement("SELECT name FROM medicines " +
+                    "WHERE expiry_date >= ? GROUP BY name HAVING SUM(quantity) >= 100 LIMIT 20000")) {
+                pstmt.setString(1, LocalDate.now().toString());
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) found.add(rs.getString(1));
+                }
+            }
+            return found;
+        }));
+        if (stocked.isEmpty()) throw new IllegalStateException(file + " has nothing in stock to sell");
+        this.names = stocked.toArray(new String[0]);
+
+        List<String> terms = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < Math.min(names.length, 1000); i++) {
+            String[] words = names[random.nextInt(names.length)].split("[ /()]+");
+            String word = words[random.nextInt(words.length)];
+            if (word.length() >= 3) terms.add(word.substring(0, Math.min(word.length(), 3 + random.nextInt(4))));
+        }
+        this.searchTerms = terms.isEmpty() ? new String[]{names[0]} : terms.toArray(new String[0]);
+    }
+
+    /** Every operation, in the order the benchmark runs them. */
+    List<Task> tasks() {
+        LocalDate monthAgo = LocalDate.now().minusDays(30);
+        return List.of(
+                new Task("checkout", "SalesPanel.completeSale: reserve 1-3 lines, journal them, wait for the fsync", this::checkout),
+                new Task("search", "MedicinePanel.searchMedicines: ranked full-text search", random -> {
+                    String term = searchTerms[random.nextInt(searchTerms.length)];
+                    DataAccessExecutor.await(dataAccess.read(db -> db.medicines.search(term, MedicineSearch.MAX_RESULTS)));
+                }),
+                new Task("grid-load", "MedicinePanel.loadMedicines: row count and first page of the grid", random ->
+                        DataAccessExecutor.await(dataAccess.read(db -> {
+                            db.medicines.count();
+                            return db.medicines.findPage(null, 0, MedicineTableModel.PAGE_SIZE, 0);
+                        }))),
+                new Task("till-load", "SalesPanel.loadMedicines: every batch in stock", random ->
+                        DataAccessExecutor.await(dataAccess.read(db -> db.medicines.findInStock()))),
+                new Task("sales-report", "ReportsPanel.generateMonthlyReport: 30-day rollup preview", random ->
+                        DataAccessExecutor.await(dataAccess.read(db -> Reports.period(db, "Monthly sales report",
+                                monthAgo, LocalDate.now(), false, ReportWriter.Format.TEXT, null)))),
+                new Task("sales-export", "ReportsPanel export: 30 days of itemized sales as CSV", random ->
+                        DataAccessExecutor.await(dataAccess.read(db -> Reports.period(db, "Monthly sales report",
+                                monthAgo, LocalDate.now(), true, ReportWriter.Format.CSV, Writer.nullWriter())))),
+                new Task("inventory-report", "ReportsPanel.generateInventoryReport: every batch, CSV export", random ->
+                        DataAccessExecutor.await(dataAccess.read(db ->
+                                Reports.inventory(db, ReportWriter.Format.CSV, Writer.nullWriter()))))
+        );
+    }
+
+    Task task(String name) {
+        for (Task task : tasks()) {
+            if (task.name.equals(name)) return task;
+        }
+        throw new IllegalArgumentException("No such operation: " + name);
+    }
+
+    // a line that has run out is skipped, as the till would refuse it; a basket with none left is an error
+    private void checkout(ThreadLocalRandom random) throws Exception {
+        StockLedger.Reservation held = stockLedger.newReservation();
+        int lines = 1 + random.nextInt(3);
+        for (int attempt = 0; attempt < lines * 3 && lines > 0; attempt++) {
+            if (held.reserve(names[random.nextInt(names.length)], 1 + random.nextInt(2))) lines--;
+        }
+        List<Sale> sales = held.sales(LocalDate.now().toString());
+        if (sales.isEmpty()) throw new IllegalStateException("Ran out of stock; regenerate the database");
+        DataAccessExecutor.await(salesJournal.append(sales, held));
+    }
+
+    @Override
+    public void close() {
+        salesJournal.close();
+        stockLedger.close();
+    }
+}
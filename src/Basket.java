@@ -0,0 +1,78 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A customer's basket: one line per medicine name, as shown at the till.
+ * The stock for each line is held in the {@link StockLedger} by the caller,
+ * and it is the reservation, priced per batch, that goes into the
+ * {@link SalesJournal} at checkout, to be written to the database later
+ * by the journal's drain.
+ */
+class Basket {
+
+    static class Line {
+        final Medicine medicine; // the batch sold first when the line was added, for name and price
+        int quantity;
+
+        Line(Medicine medicine, int quantity) {
+            this.medicine = medicine;
+            this.quantity = quantity;
+        }
+
+        long total() {
+            return quantity * medicine.priceNgwee;
+        }
+    }
+
+    private final List<Line> lines = new ArrayList<>();
+
+    /**
+     * Adds {@code quantity} of {@code medicine}, merging with an existing line
+     * for the same medicine name.
+     *
+     * @throws IllegalArgumentException if the quantity is not positive
+     */
+    void add(Medicine medicine, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Please enter a valid quantity!");
+        }
+        Line existing = find(medicine.name);
+        if (existing == null) {
+            lines.add(new Line(medicine, quantity));
+        } else {
+            existing.quantity += quantity;
+        }
+    }
+
+    Line remove(int index) {
+        return lines.remove(index);
+    }
+
+    void clear() {
+        lines.clear();
+    }
+
+    boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    List<Line> lines() {
+        return Collections.unmodifiableList(lines);
+    }
+
+    long total() {
+        long total = 0;
+        for (Line line : lines) {
+            total += line.total();
+        }
+        return total;
+    }
+
+    private Line find(String name) {
+        for (Line line : lines) {
+            if (line.medicine.name.equals(name)) return line;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,23 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// One row of sales_daily_rollup: a medicine's sales on one day
+class DailySales {
+    String saleDate;
+    int medicineId;
+    String medicineName;
+    int quantity;
+    long revenueNgwee;
+    int saleCount;
+
+    static DailySales read(ResultSet rs) throws SQLException {
+        DailySales day = new DailySales();
+        day.saleDate = rs.getString("sale_date");
+        day.medicineId = rs.getInt("medicine_id");
+        day.medicineName = rs.getString("medicine_name");
+        day.quantity = rs.getInt("quantity");
+        day.revenueNgwee = rs.getLong("revenue_ngwee");
+        day.saleCount = rs.getInt("sale_count");
+        return day;
+    }
+}
@@ -0,0 +1,244 @@
+import javax.swing.SwingUtilities;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs all JDBC work off the Swing event dispatch thread. The database is
+ * opened in WAL mode with one writer connection, owned by a single thread so
+ * writes are serialized, and a small pool of read-only connections, one per
+ * reader thread. Under WAL readers never block the writer or each other, so a
+ * long report, a grid load and a checkout can all run at once.
+ *
+ * <p>Each connection and its {@link DataSession} are opened lazily on the
+ * thread that uses them and never leave it. Callers get a future back and,
+ * when they pass callbacks, the result is posted back onto the EDT.
+ */
+public class DataAccessExecutor {
+    static final int READER_THREADS = 3;
+
+    // Applied to every connection; journal_mode=WAL is persistent in the file
+    private static final String[] CONNECTION_PRAGMAS = {
+            "PRAGMA busy_timeout = 5000",
+            "PRAGMA cache_size = -16000",   // 16 MB page cache per connection
+            "PRAGMA mmap_size = 268435456", // read through a 256 MB memory map
+            "PRAGMA temp_store = MEMORY",
+    };
+    private static final String[] WRITER_PRAGMAS = {
+            "PRAGMA journal_mode = WAL",
+            "PRAGMA synchronous = NORMAL",  // durable across app crashes, fsync only at checkpoints
+    };
+
+    /** A unit of database work, run on a data-access thread. */
+    @FunctionalInterface
+    public interface DbCall<T> {
+        T call(DataSession db) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface SessionSource {
+        DataSession get() throws Exception;
+    }
+
+    private final String url;
+    private final ExecutorService writer;
+    private final ExecutorService readers;
+    private DataSession writerSession; // only touched from the writer thread
+    private final ThreadLocal<DataSession> readerSession = new ThreadLocal<>();
+    private final AtomicLong dataVersion = new AtomicLong();
+
+    public DataAccessExecutor(String url) {
+        this.url = url;
+        this.writer = Executors.newSingleThreadExecutor(daemonThreads("pharmacy-db-writer"));
+        this.readers = Executors.newFixedThreadPool(READER_THREADS, daemonThreads("pharmacy-db-reader"));
+    }
+
+    /**
+     * Queues {@code call} on the writer thread, behind every earlier write.
+     * Cancelling the returned future before the call starts skips it entirely;
+     * cancelling it while it runs drops the result.
+     */
+    public <T> CompletableFuture<T> write(DbCall<T> call) {
+        return run(writer, this::writerSession, db -> {
+            try {
+                return call.call(db);
+            } finally {
+                dataVersion.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Bumped after every write finishes, committed or not. A read that starts
+     * after observing version {@code v} sees every change made before it, so
+     * a result stamped with {@code v} is current while the version is still
+     * {@code v}.
+     */
+    public long dataVersion() {
+        return dataVersion.get();
+    }
+
+    /** Queues {@code call} on a reader thread; it must not modify the database. */
+    public <T> CompletableFuture<T> read(DbCall<T> call) {
+        return run(readers, this::readerSession, call);
+    }
+
+    /** Like {@link #write(DbCall)} but delivers the outcome on the EDT. */
+    public <T> CompletableFuture<T> write(DbCall<T> call, Consumer<? super T> onSuccess,
+                                          Consumer<? super Exception> onError) {
+        return onEdt(write(call), onSuccess, onError);
+    }
+
+    /** Like {@link #read(DbCall)} but delivers the outcome on the EDT. */
+    public <T> CompletableFuture<T> read(DbCall<T> call, Consumer<? super T> onSuccess,
+                                         Consumer<? super Exception> onError) {
+        return onEdt(read(call), onSuccess, onError);
+    }
+
+    /**
+     * Waits for {@code future} and returns its result, rethrowing the call's
+     * own exception. For callers off the EDT, such as the HTTP API.
+     */
+    static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    /**
+     * Opens every reader connection and compiles the first screens'
+     * statements on it, in the background. Call it before any other read:
+     * while the pool is still empty each call gets a thread of its own.
+     */
+    public CompletableFuture<Void> warmUp() {
+        CompletableFuture<?>[] calls = new CompletableFuture<?>[READER_THREADS];
+        for (int i = 0; i < READER_THREADS; i++) {
+            calls[i] = read(db -> {
+                db.warmUp();
+                return null;
+            });
+        }
+        return CompletableFuture.allOf(calls);
+    }
+
+    /** Creates a slot in which each new request supersedes the previous one. */
+    public Slot newSlot() {
+        return new Slot();
+    }
+
+    private static <T> CompletableFuture<T> run(ExecutorService executor, SessionSource sessions, DbCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(call.call(sessions.get()));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    // Nothing is delivered for a future that was cancelled in the meantime
+    private static <T> CompletableFuture<T> onEdt(CompletableFuture<T> future, Consumer<? super T> onSuccess,
+                                                  Consumer<? super Exception> onError) {
+        future.whenComplete((result, failure) -> SwingUtilities.invokeLater(() -> {
+            if (future.isCancelled()) {
+                return;
+            }
+            if (failure == null) {
+                onSuccess.accept(result);
+            } else {
+                onError.accept(unwrap(failure));
+            }
+        }));
+        return future;
+    }
+
+    private DataSession writerSession() throws SQLException, ClassNotFoundException {
+        if (writerSession == null) {
+            writerSession = new DataSession(open(WRITER_PRAGMAS));
+        }
+        return writerSession;
+    }
+
+    private DataSession readerSession() throws SQLException, ClassNotFoundException {
+        DataSession session = readerSession.get();
+        if (session == null) {
+            session = new DataSession(open("PRAGMA query_only = ON"));
+            readerSession.set(session);
+        }
+        return session;
+    }
+
+    private Connection open(String... rolePragmas) throws SQLException, ClassNotFoundException {
+        Class.forName("org.sqlite.JDBC");
+        Connection connection = DriverManager.getConnection(url);
+        try (Statement stmt = connection.createStatement()) {
+            for (String pragma : CONNECTION_PRAGMAS) {
+                stmt.execute(pragma);
+            }
+            for (String pragma : rolePragmas) {
+                stmt.execute(pragma);
+            }
+        }
+        return connection;
+    }
+
+    static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static Exception unwrap(Throwable failure) {
+        Throwable cause = failure;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof Exception) {
+            return (Exception) cause;
+        }
+        return new RuntimeException(cause);
+    }
+
+    /**
+     * Latest-wins read slot, e.g. for a search overtaken by a newer
+     * keystroke. Confined to the EDT.
+     */
+    public class Slot {
+        private CompletableFuture<?> current;
+
+        public <T> CompletableFuture<T> read(DbCall<T> call, Consumer<? super T> onSuccess,
+                                             Consumer<? super Exception> onError) {
+            cancel();
+            CompletableFuture<T> future = DataAccessExecutor.this.read(call, onSuccess, onError);
+            current = future;
+            return future;
+        }
+
+        public void cancel() {
+            if (current != null) {
+                current.cancel(false);
+                current = null;
+            }
+        }
+    }
+}
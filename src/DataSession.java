@@ -0,0 +1,77 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * One connection together with its statement cache and the repositories
+ * built on it. A session belongs to the thread that runs its
+ * {@link DataAccessExecutor.DbCall}s and is never shared.
+ */
+final class DataSession implements AutoCloseable {
+
+    /** Work to run inside {@link #inTransaction}. */
+    @FunctionalInterface
+    interface Work<T> {
+        T run() throws SQLException;
+    }
+
+    final StatementCache statements;
+    final MedicineRepository medicines;
+    final SalesRepository sales;
+    final UserRepository users;
+
+    DataSession(Connection connection) {
+        this.statements = new StatementCache(connection, StatementCache.DEFAULT_CAPACITY);
+        this.medicines = new MedicineRepository(statements);
+        this.sales = new SalesRepository(this);
+        this.users = new UserRepository(statements);
+    }
+
+    /**
+     * Compiles the statements behind login, the medicine grid, the till and
+     * the sales history into the cache, so the first click doesn't wait on
+     * SQLite parsing them.
+     */
+    void warmUp() throws SQLException {
+        users.warmUp();
+        for (String[] queries : List.of(MedicineRepository.STARTUP_QUERIES, SalesRepository.STARTUP_QUERIES)) {
+            for (String sql : queries) {
+                statements.prepare(sql);
+            }
+        }
+    }
+
+    /** The raw connection, for DDL and transactions. */
+    Connection connection() {
+        return statements.connection();
+    }
+
+    /**
+     * Runs {@code work} in one transaction, committing if it returns and
+     * rolling back if it throws. Joins the caller's transaction when one is
+     * already open.
+     */
+    <T> T inTransaction(Work<T> work) throws SQLException {
+        Connection connection = connection();
+        if (!connection.getAutoCommit()) {
+            return work.run();
+        }
+        connection.setAutoCommit(false);
+        try {
+            T result = work.run();
+            connection.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        statements.close();
+        connection().close();
+    }
+}
@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * In-process domain events such as {@link MedicineChanged},
+ * {@link StockAdjusted} and {@link SaleRecorded}. Events can be published
+ * from any thread and are delivered later, in publish order, on the delivery
+ * executor (the EDT for the Swing UI), to the subscribers of their exact
+ * class.
+ *
+ * <p>Events published while a delivery is pending go out in the same batch.
+ * A {@link Coalescing} event replaces a pending one of the same class and key,
+ * so a burst of updates to one row is delivered once, with the final values.
+ */
+final class EventBus {
+
+    /** An event of which only the latest per key matters. */
+    interface Coalescing {
+        Object coalesceKey();
+    }
+
+    private final Executor delivery;
+    private final Map<Class<?>, List<Subscriber<?>>> subscribers = new ConcurrentHashMap<>();
+
+    // guarded by this; null slots are events superseded by a coalesced one
+    private List<Object> pending = new ArrayList<>();
+    private final Map<Object, Integer> pendingKeys = new HashMap<>();
+
+    EventBus(Executor delivery) {
+        this.delivery = delivery;
+    }
+
+    /** A group of subscriptions that are cancelled together, e.g. when a window closes. */
+    Subscriptions newSubscriptions() {
+        return new Subscriptions();
+    }
+
+    void publish(Object event) {
+        Objects.requireNonNull(event);
+        boolean schedule;
+        synchronized (this) {
+            schedule = pending.isEmpty();
+            if (event instanceof Coalescing) {
+                Object key = List.of(event.getClass(), ((Coalescing) event).coalesceKey());
+                Integer previous = pendingKeys.put(key, pending.size());
+                if (previous != null) {
+                    pending.set(previous, null); // the newer event goes last, after anything it follows
+                }
+            }
+            pending.add(event);
+        }
+        if (schedule) {
+            delivery.execute(this::deliverPending);
+        }
+    }
+
+    private void deliverPending() {
+        List<Object> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new ArrayList<>();
+            pendingKeys.clear();
+        }
+        for (Object event : batch) {
+            if (event == null) continue;
+            List<Subscriber<?>> targets = subscribers.get(event.getClass());
+            if (targets == null) continue;
+            for (Subscriber<?> subscriber : targets) {
+                subscriber.deliver(event);
+            }
+        }
+    }
+
+    private static final class Subscriber<E> {
+        final Class<E> type;
+        final Consumer<? super E> handler;
+        final Subscriptions owner;
+
+        Subscriber(Class<E> type, Consumer<? super E> handler, Subscriptions owner) {
+            this.type = type;
+            this.handler = handler;
+            this.owner = owner;
+        }
+
+        void deliver(Object event) {
+            if (owner.closed) return;
+            try {
+                handler.accept(type.cast(event));
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // one failing subscriber must not starve the rest
+            }
+        }
+    }
+
+    final class Subscriptions implements AutoCloseable {
+        private final List<Subscriber<?>> mine = new ArrayList<>();
+        private volatile boolean closed;
+
+        <E> Subscriptions on(Class<E> type, Consumer<? super E> handler) {
+            Subscriber<E> subscriber = new Subscriber<>(type, handler, this);
+            synchronized (mine) {
+                mine.add(subscriber);
+            }
+            subscribers.computeIfAbsent(type, t -> new CopyOnWriteArrayList<>()).add(subscriber);
+            return this;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            synchronized (mine) {
+                for (Subscriber<?> subscriber : mine) {
+                    List<Subscriber<?>> list = subscribers.get(subscriber.type);
+                    if (list != null) list.remove(subscriber);
+                }
+                mine.clear();
+            }
+        }
+    }
+}
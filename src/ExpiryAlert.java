@@ -0,0 +1,21 @@
+/**
+ * A batch entered the near-expiry window, expired, or stopped being
+ * flagged (deleted, sold out or given a new date). Only the latest per
+ * medicine is delivered.
+ */
+final class ExpiryAlert implements EventBus.Coalescing {
+    enum Stage { NONE, NEAR_EXPIRY, EXPIRED }
+
+    final Medicine medicine;
+    final Stage stage;
+
+    ExpiryAlert(Medicine medicine, Stage stage) {
+        this.medicine = medicine;
+        this.stage = stage;
+    }
+
+    @Override
+    public Object coalesceKey() {
+        return medicine.id;
+    }
+}
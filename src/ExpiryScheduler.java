@@ -0,0 +1,192 @@
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches batch expiry dates in the background. Every batch sits in a
+ * min-heap keyed by the day of its next alert: first {@link #WARN_DAYS}
+ * before expiry, then the day after it. A check only pops the entries that
+ * are due, and the timer sleeps until the earliest remaining one, so the
+ * medicines table is read once at startup and never scanned again.
+ *
+ * <p>Changes arrive as {@link MedicineChanged} and {@link StockAdjusted}
+ * events. A changed batch gets a fresh heap entry and its old one is
+ * skipped when popped. Alerts go out as {@link ExpiryAlert} events. Batches
+ * without stock are tracked but never flagged.
+ *
+ * <p>The heap is confined to the scheduler's own thread.
+ */
+final class ExpiryScheduler implements AutoCloseable {
+    static final int WARN_DAYS = Integer.getInteger("pharmacy.expiry.warnDays", 30);
+
+    private static final class Entry implements Comparable<Entry> {
+        final Medicine medicine;
+        final long expiryDay;
+        final long dueDay;
+        final ExpiryAlert.Stage stage; // raised when dueDay arrives
+
+        Entry(Medicine medicine, long expiryDay, long dueDay, ExpiryAlert.Stage stage) {
+            this.medicine = medicine;
+            this.expiryDay = expiryDay;
+            this.dueDay = dueDay;
+            this.stage = stage;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byDay = Long.compare(dueDay, other.dueDay);
+            return byDay != 0 ? byDay : Integer.compare(medicine.id, other.medicine.id);
+        }
+    }
+
+    private final DataAccessExecutor dataAccess;
+    private final EventBus events;
+    private final EventBus.Subscriptions subscriptions;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pharmacy-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private final Map<Integer, Entry> current = new HashMap<>(); // popped entries not in here are stale
+    private ScheduledFuture<?> nextCheck;
+
+    // read from any thread
+    private final Set<Integer> nearExpiry = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> expired = ConcurrentHashMap.newKeySet();
+
+    ExpiryScheduler(DataAccessExecutor dataAccess, EventBus events) {
+        this.dataAccess = dataAccess;
+        this.events = events;
+        this.subscriptions = events.newSubscriptions();
+    }
+
+    /** Loads every batch once and starts watching. Call after the schema is in place. */
+    void start() {
+        subscriptions
+                .on(MedicineChanged.class, e -> timer.execute(() -> {
+                    if (e.isBulk()) reload();
+                    else if (e.delta.kind == MedicineDelta.Kind.DELETED) untrack(e.delta.medicine);
+                    else track(e.delta.medicine);
+                    check();
+                }))
+                .on(StockAdjusted.class, e -> timer.execute(() -> {
+                    track(e.medicine);
+                    check();
+                }));
+        timer.execute(this::reload);
+    }
+
+    int nearExpiryCount() {
+        return nearExpiry.size();
+    }
+
+    int expiredCount() {
+        return expired.size();
+    }
+
+    private void reload() {
+        List<Medicine> all;
+        try {
+            all = dataAccess.read(db -> {
+                List<Medicine> rows = new ArrayList<>();
+                db.medicines.forEachByName(rows::add);
+                return rows;
+            }).get();
+        } catch (Exception e) {
+            System.err.println("Expiry scheduler could not load medicines: " + e);
+            return;
+        }
+        for (Entry entry : new ArrayList<>(current.values())) {
+            untrack(entry.medicine);
+        }
+        queue.clear();
+        for (Medicine med : all) {
+            track(med);
+        }
+        check();
+    }
+
+    private void track(Medicine med) {
+        long expiryDay;
+        try {
+            expiryDay = LocalDate.parse(med.expiryDate).toEpochDay();
+        } catch (DateTimeParseException | NullPointerException e) {
+            untrack(med); // nothing to watch without a date
+            return;
+        }
+        Entry previous = current.get(med.id);
+        if (previous != null && previous.expiryDay != expiryDay) {
+            flag(med, ExpiryAlert.Stage.NONE); // a new date starts the alerts over
+        }
+        Entry entry = new Entry(med, expiryDay, expiryDay - WARN_DAYS, ExpiryAlert.Stage.NEAR_EXPIRY);
+        current.put(med.id, entry);
+        queue.add(entry);
+    }
+
+    private void untrack(Medicine med) {
+        current.remove(med.id);
+        flag(med, ExpiryAlert.Stage.NONE);
+    }
+
+    // pops whatever is due today, then sleeps until the next entry or midnight, whichever is first
+    private void check() {
+        long today = LocalDate.now().toEpochDay();
+        while (!queue.isEmpty() && queue.peek().dueDay <= today) {
+            Entry entry = queue.poll();
+            if (current.get(entry.medicine.id) != entry) continue;
+
+            if (entry.stage == ExpiryAlert.Stage.NEAR_EXPIRY && today <= entry.expiryDay) {
+                flag(entry.medicine, ExpiryAlert.Stage.NEAR_EXPIRY);
+                Entry next = new Entry(entry.medicine, entry.expiryDay, entry.expiryDay + 1, ExpiryAlert.Stage.EXPIRED);
+                current.put(entry.medicine.id, next);
+                queue.add(next);
+            } else {
+                flag(entry.medicine, ExpiryAlert.Stage.EXPIRED);
+            }
+        }
+
+        if (nextCheck != null) {
+            nextCheck.cancel(false);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime wakeUp = LocalDate.now().plusDays(1).atStartOfDay();
+        if (!queue.isEmpty()) {
+            LocalDateTime due = LocalDate.ofEpochDay(queue.peek().dueDay).atStartOfDay();
+            if (due.isBefore(wakeUp)) wakeUp = due;
+        }
+        long delayMillis = Math.max(0, Duration.between(now, wakeUp).toMillis());
+        nextCheck = timer.schedule(this::check, delayMillis + 1000, TimeUnit.MILLISECONDS);
+    }
+
+    private void flag(Medicine med, ExpiryAlert.Stage stage) {
+        if (med.quantity <= 0) {
+            stage = ExpiryAlert.Stage.NONE;
+        }
+        boolean wasFlagged = nearExpiry.remove(med.id) | expired.remove(med.id);
+        if (stage == ExpiryAlert.Stage.NEAR_EXPIRY) nearExpiry.add(med.id);
+        if (stage == ExpiryAlert.Stage.EXPIRED) expired.add(med.id);
+        if (stage != ExpiryAlert.Stage.NONE || wasFlagged) {
+            events.publish(new ExpiryAlert(med, stage));
+        }
+    }
+
+    @Override
+    public void close() {
+        subscriptions.close();
+        timer.shutdownNow();
+    }
+}
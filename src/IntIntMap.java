@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+/**
+ * An int to int hash map with open addressing and linear probing. Keys and
+ * values sit in two flat arrays, so a lookup or update never boxes and the
+ * map costs two ints per slot however many medicines there are.
+ *
+ * <p>Not thread-safe.
+ */
+final class IntIntMap {
+    private static final int FREE = Integer.MIN_VALUE; // never a medicine id
+
+    /** Receives each entry from {@link #forEach}. */
+    interface Visitor {
+        void visit(int key, int value);
+    }
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    IntIntMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean containsKey(int key) {
+        return key != FREE && keys[slot(key)] == key;
+    }
+
+    /** The value for {@code key}, or {@code missing} if there is none. */
+    int get(int key, int missing) {
+        if (key == FREE) return missing;
+        int slot = slot(key);
+        return keys[slot] == key ? values[slot] : missing;
+    }
+
+    void put(int key, int value) {
+        checkKey(key);
+        int slot = slot(key);
+        values[slot] = value;
+        if (keys[slot] != key) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) grow();
+        }
+    }
+
+    /** Adds {@code delta} to the value for {@code key}, or stores it if there is none; returns the new value. */
+    int add(int key, int delta) {
+        checkKey(key);
+        int slot = slot(key);
+        if (keys[slot] == key) {
+            return values[slot] += delta;
+        }
+        put(key, delta);
+        return delta;
+    }
+
+    void remove(int key) {
+        if (key == FREE) return;
+        int slot = slot(key);
+        if (keys[slot] != key) return;
+        keys[slot] = FREE;
+        size--;
+        // shift later entries of the same probe run back so lookups still find them
+        int mask = keys.length - 1;
+        int next = (slot + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                keys[slot] = keys[next];
+                values[slot] = values[next];
+                keys[next] = FREE;
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+    }
+
+    void forEach(Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) visitor.visit(keys[i], values[i]);
+        }
+    }
+
+    // the slot holding key, or the free slot where it would go
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != key && keys[slot] != FREE) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(keys, FREE);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == FREE) continue;
+            int slot = slot(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9; // ids are sequential, spread them over the table
+        return h ^ (h >>> 16);
+    }
+
+    private static void checkKey(int key) {
+        if (key == FREE) throw new IllegalArgumentException("unsupported key " + key);
+    }
+}
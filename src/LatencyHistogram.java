@@ -0,0 +1,101 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram in nanoseconds, bucketed the way HdrHistogram
+ * does it: exact below 256 ns, then 128 linear sub-buckets per power of two,
+ * so any recorded value is reported within 1% whatever its magnitude.
+ * Recording is a couple of shifts and one atomic increment, with no
+ * allocation, so it can sit on every query. Values above about 18 minutes
+ * land in the top bucket; the maximum is kept exactly.
+ *
+ * <p>Percentiles are read from a {@link Snapshot}. Neither a snapshot nor
+ * {@link #reset()} stops concurrent recording, so a value recorded at that
+ * moment may be counted in one and not the other.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;   // per power of two
+    private static final int EXACT = SUB_BUCKETS << 1;             // values below this get their own bucket
+    private static final int MAX_BITS = 40;                        // 2^40 ns, about 18 minutes
+    static final int BUCKETS = EXACT + (MAX_BITS - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        total.add(value);
+        long seen = max.get();
+        while (value > seen && !max.compareAndSet(seen, value)) {
+            seen = max.get();
+        }
+    }
+
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, total.sum(), max.get());
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        max.set(0);
+    }
+
+    static int indexOf(long value) {
+        if (value < EXACT) return (int) value;
+        int shift = 64 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS + 1);
+        if (shift > MAX_BITS - SUB_BUCKET_BITS - 1) return BUCKETS - 1;
+        return EXACT + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // the largest value that lands in bucket index, which is what percentiles report
+    static long highestValueIn(int index) {
+        if (index < EXACT) return index;
+        int shift = (index - EXACT) / SUB_BUCKETS + 1;
+        long top = SUB_BUCKETS + (index - EXACT) % SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    /** A point-in-time copy of the counts. */
+    static final class Snapshot {
+        private final long[] counts;
+        final long count;
+        final long totalNanos;
+        final long maxNanos;
+
+        private Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        double meanNanos() {
+            return count == 0 ? 0 : (double) totalNanos / count;
+        }
+
+        /** The value at or below which {@code percentile} (0 to 1) of the recordings fall, never above the max. */
+        long valueAt(double percentile) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(highestValueIn(i), maxNanos);
+            }
+            return maxNanos;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+import java.beans.ConstructorProperties;
+import java.util.List;
+
+/**
+ * Query and user-action latencies, registered as {@code pharmacy:type=Latency}
+ * so JConsole, VisualVM or any JMX client can watch a running till.
+ * Times are in milliseconds.
+ */
+public interface LatencyMXBean {
+
+    /** One SQL statement, by its text, since start or the last reset. */
+    List<Timing> getQueries();
+
+    /** One user action, such as a search, a checkout or a report, since start or the last reset. */
+    List<Timing> getActions();
+
+    /** Starts every histogram afresh, e.g. before a load test. */
+    void reset();
+
+    /** Prepared statements reused from a connection's {@link StatementCache}, over every connection since start. */
+    long getStatementCacheHits();
+
+    /** Prepared statements compiled because they were not in the cache, over every connection since start. */
+    long getStatementCacheMisses();
+
+    /** Statements slower than this go to the {@link SlowQueryLog}; negative turns it off. */
+    long getSlowQueryThresholdMillis();
+
+    void setSlowQueryThresholdMillis(long millis);
+
+    /** Count, rows and latency percentiles of one query or action. */
+    final class Timing {
+        private final String name;
+        private final long count;
+        private final long failures;
+        private final long rows;
+        private final double meanMillis;
+        private final double p50Millis;
+        private final double p90Millis;
+        private final double p99Millis;
+        private final double p999Millis;
+        private final double maxMillis;
+
+        @ConstructorProperties({"name", "count", "failures", "rows", "meanMillis",
+                "p50Millis", "p90Millis", "p99Millis", "p999Millis", "maxMillis"})
+        public Timing(String name, long count, long failures, long rows, double meanMillis,
+                      double p50Millis, double p90Millis, double p99Millis, double p999Millis, double maxMillis) {
+            this.name = name;
+            this.count = count;
+            this.failures = failures;
+            this.rows = rows;
+            this.meanMillis = meanMillis;
+            this.p50Millis = p50Millis;
+            this.p90Millis = p90Millis;
+            this.p99Millis = p99Millis;
+            this.p999Millis = p999Millis;
+            this.maxMillis = maxMillis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        /** Rows returned or changed, for queries; zero for actions. */
+        public long getRows() {
+            return rows;
+        }
+
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP90Millis() {
+            return p90Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getP999Millis() {
+            return p999Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * A batch's stock fell to its reorder level or below, or recovered above it
+ * (restocked, level lowered or deleted). Only the latest per medicine is
+ * delivered.
+ */
+final class LowStockAlert implements EventBus.Coalescing {
+    final int medicineId;
+    final String name;
+    final String batchNumber;
+    final int quantity;
+    final int reorderLevel;
+    final boolean low;
+
+    LowStockAlert(int medicineId, String name, String batchNumber, int quantity, int reorderLevel, boolean low) {
+        this.medicineId = medicineId;
+        this.name = name;
+        this.batchNumber = batchNumber;
+        this.quantity = quantity;
+        this.reorderLevel = reorderLevel;
+        this.low = low;
+    }
+
+    @Override
+    public Object coalesceKey() {
+        return medicineId;
+    }
+}
@@ -0,0 +1,27 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Helper class for medicine data, one row of the medicines table
+class Medicine {
+    static final int DEFAULT_REORDER_LEVEL = 10; //the old low stock prompt's default threshold
+
+    int id;
+    String name;
+    String batchNumber;
+    String expiryDate;
+    int quantity;
+    long priceNgwee; //see Money
+    int reorderLevel = DEFAULT_REORDER_LEVEL; //low stock once quantity is at or below this
+
+    static Medicine read(ResultSet rs) throws SQLException {
+        Medicine med = new Medicine();
+        med.id = rs.getInt("id");
+        med.name = rs.getString("name");
+        med.batchNumber = rs.getString("batch_number");
+        med.expiryDate = rs.getString("expiry_date");
+        med.quantity = rs.getInt("quantity");
+        med.priceNgwee = rs.getLong("price_ngwee");
+        med.reorderLevel = rs.getInt("reorder_level");
+        return med;
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * A medicine was added, edited or deleted. Carries the committed
+ * {@link MedicineDelta}, or none when many rows changed at once (a CSV
+ * import) and listeners should reload instead.
+ */
+final class MedicineChanged implements EventBus.Coalescing {
+    private static final Object BULK = new Object();
+
+    final MedicineDelta delta;
+
+    MedicineChanged(MedicineDelta delta) {
+        this.delta = delta;
+    }
+
+    static MedicineChanged bulk() {
+        return new MedicineChanged(null);
+    }
+
+    boolean isBulk() {
+        return delta == null;
+    }
+
+    // deltas must all be applied in order; only back-to-back reloads collapse
+    @Override
+    public Object coalesceKey() {
+        return isBulk() ? BULK : this;
+    }
+}
@@ -0,0 +1,194 @@
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Streams a supplier catalog CSV into the medicines table. The file is read
+ * line by line, never held in memory; valid rows are collected into batches
+ * and each batch is upserted on {@code (name, batch_number)} in one write
+ * transaction. Between batches other writes such as checkouts get their turn
+ * on the writer thread.
+ *
+ * <p>Expected columns: {@code name,batch_number,expiry_date,quantity,price},
+ * with an optional header line. Blocking; call it off the EDT.
+ */
+final class MedicineCsvImporter {
+    static final int DEFAULT_BATCH_SIZE = Integer.getInteger("pharmacy.import.batchSize", 5000);
+    private static final int MAX_REPORTED_REJECTIONS = 1000;
+
+    /** Called after every batch is written. */
+    @FunctionalInterface
+    interface Progress {
+        void update(long bytesRead, long totalBytes, Result soFar);
+    }
+
+    static final class Result {
+        int inserted;
+        int updated;
+        int rejected;
+        final List<String> rejections = new ArrayList<>(); // first MAX_REPORTED_REJECTIONS only
+
+        private void reject(long lineNumber, String reason) {
+            rejected++;
+            if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                rejections.add("Line " + lineNumber + ": " + reason);
+            }
+        }
+    }
+
+    private final DataAccessExecutor dataAccess;
+    private final int batchSize;
+
+    MedicineCsvImporter(DataAccessExecutor dataAccess, int batchSize) {
+        if (batchSize <= 0) throw new IllegalArgumentException("batchSize must be positive");
+        this.dataAccess = dataAccess;
+        this.batchSize = batchSize;
+    }
+
+    Result importFile(Path file, Progress progress) throws IOException, SQLException, InterruptedException {
+        long totalBytes = Files.size(file);
+        Result result = new Result();
+        // the last row wins when the same (name, batch_number) appears twice in a batch
+        Map<String, Medicine> batch = new LinkedHashMap<>();
+
+        try (CountingInputStream in = new CountingInputStream(Files.newInputStream(file));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber == 1 && line.startsWith("\uFEFF")) line = line.substring(1);
+                if (line.isBlank()) continue;
+                if (lineNumber == 1 && line.toLowerCase(Locale.ROOT).startsWith("name")) continue; // header
+
+                try {
+                    Medicine med = parse(line);
+                    batch.put(med.name + '\u0000' + med.batchNumber, med);
+                } catch (IllegalArgumentException e) {
+                    result.reject(lineNumber, e.getMessage());
+                }
+
+                if (batch.size() >= batchSize) {
+                    flush(batch, result);
+                    progress.update(in.count, totalBytes, result);
+                }
+            }
+            flush(batch, result);
+            progress.update(totalBytes, totalBytes, result);
+        }
+        return result;
+    }
+
+    private void flush(Map<String, Medicine> batch, Result result) throws SQLException, InterruptedException {
+        if (batch.isEmpty()) return;
+        List<Medicine> rows = new ArrayList<>(batch.values());
+        batch.clear();
+        try {
+            int[] counts = dataAccess.write(db -> db.inTransaction(() -> db.medicines.upsertAll(rows))).get();
+            result.inserted += counts[0];
+            result.updated += counts[1];
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+            throw new SQLException("Import batch failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    static Medicine parse(String line) {
+        List<String> fields = splitCsv(line);
+        if (fields.size() != 5) {
+            throw new IllegalArgumentException("expected 5 columns but found " + fields.size());
+        }
+        Medicine med = new Medicine();
+        med.name = fields.get(0).trim();
+        med.batchNumber = fields.get(1).trim();
+        med.expiryDate = fields.get(2).trim();
+        if (med.name.isEmpty() || med.batchNumber.isEmpty()) {
+            throw new IllegalArgumentException("name and batch number are required");
+        }
+        try {
+            LocalDate.parse(med.expiryDate);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("expiry date must be YYYY-MM-DD: " + med.expiryDate);
+        }
+        try {
+            med.quantity = Integer.parseInt(fields.get(3).trim());
+            med.priceNgwee = Money.parse(fields.get(4));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid quantity or price");
+        }
+        if (med.quantity < 0 || med.priceNgwee < 0) {
+            throw new IllegalArgumentException("quantity and price must not be negative");
+        }
+        return med;
+    }
+
+    // RFC 4180 fields on a single line: commas inside quotes, "" for a literal quote
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>(5);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+import java.sql.SQLException;
+
+/**
+ * One row-level change to the medicines table, with the row as it was before.
+ * Built on the writer thread in the same transaction as the change, and
+ * applied to {@link MedicineTableModel} without a reload: the model finds
+ * the row's old and new {@code (name, id)} keys among the pages it holds.
+ */
+final class MedicineDelta {
+    enum Kind { INSERTED, UPDATED, DELETED }
+
+    final Kind kind;
+    final Medicine medicine; // the new values, or the row as it was when deleted
+    final Medicine before;   // null when inserted
+
+    private MedicineDelta(Kind kind, Medicine medicine, Medicine before) {
+        this.kind = kind;
+        this.medicine = medicine;
+        this.before = before;
+    }
+
+    /** Inserts {@code med}, setting its id. */
+    static MedicineDelta insert(DataSession db, Medicine med) throws SQLException {
+        return db.inTransaction(() -> {
+            med.id = db.medicines.insert(med);
+            return new MedicineDelta(Kind.INSERTED, med, null);
+        });
+    }
+
+    static MedicineDelta update(DataSession db, Medicine med) throws SQLException {
+        return db.inTransaction(() -> {
+            Medicine before = db.medicines.findById(med.id);
+            if (before == null) {
+                throw new SQLException("Medicine " + med.id + " no longer exists");
+            }
+            db.medicines.update(med);
+            return new MedicineDelta(Kind.UPDATED, med, before);
+        });
+    }
+
+    static MedicineDelta delete(DataSession db, int id) throws SQLException {
+        return db.inTransaction(() -> {
+            Medicine before = db.medicines.findById(id);
+            if (before == null) {
+                throw new SQLException("Medicine " + id + " no longer exists");
+            }
+            db.medicines.delete(id);
+            return new MedicineDelta(Kind.DELETED, before, before);
+        });
+    }
+}
@@ -0,0 +1,234 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * All SQL against the medicines table. Statements come from the session's
+ * {@link StatementCache}; result sets are closed with try-with-resources.
+ */
+final class MedicineRepository {
+    private static final String COUNT = "SELECT COUNT(*) FROM medicines";
+    private static final String ANY = "SELECT EXISTS (SELECT 1 FROM medicines)";
+    private static final String FIRST_PAGE = "SELECT * FROM medicines ORDER BY name, id LIMIT ? OFFSET ?";
+    private static final String PAGE_AFTER =
+            "SELECT * FROM medicines WHERE (name, id) > (?, ?) ORDER BY name, id LIMIT ? OFFSET ?";
+    private static final String BY_ID = "SELECT * FROM medicines WHERE id = ?";
+    private static final String ALL_BY_NAME = "SELECT * FROM medicines ORDER BY name";
+    private static final String IN_STOCK = "SELECT * FROM medicines WHERE quantity > 0 ORDER BY name";
+    private static final String STOCK_LEVELS =
+            "SELECT id, name, batch_number, expiry_date, quantity, price_ngwee, reorder_level FROM medicines";
+    private static final String EXPIRED_BEFORE = "SELECT * FROM medicines WHERE expiry_date < ? ORDER BY expiry_date";
+    private static final String INSERT =
+            "INSERT INTO medicines (name, batch_number, expiry_date, quantity, price_ngwee, reorder_level) " +
+                    "VALUES (?, ?, ?, ?, ?, ?) RETURNING id";
+    private static final String UPDATE =
+            "UPDATE medicines SET name=?, batch_number=?, expiry_date=?, quantity=?, price_ngwee=?, reorder_level=? WHERE id=?";
+    private static final String DELETE = "DELETE FROM medicines WHERE id=?";
+    private static final String UPDATE_BY_BATCH =
+            "UPDATE medicines SET expiry_date=?, quantity=?, price_ngwee=? WHERE name=? AND batch_number=?";
+    private static final String INSERT_PLAIN =
+            "INSERT INTO medicines (name, batch_number, expiry_date, quantity, price_ngwee, reorder_level) VALUES (?, ?, ?, ?, ?, ?)";
+    // what the grid and the till run first, compiled ahead by DataSession.warmUp
+    static final String[] STARTUP_QUERIES = {COUNT, FIRST_PAGE, PAGE_AFTER, IN_STOCK};
+
+    private final StatementCache statements;
+
+    MedicineRepository(StatementCache statements) {
+        this.statements = statements;
+    }
+
+    int count() throws SQLException {
+        try (ResultSet rs = statements.prepare(COUNT).executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /** Stops at the first row instead of counting them all. */
+    boolean isEmpty() throws SQLException {
+        try (ResultSet rs = statements.prepare(ANY).executeQuery()) {
+            return !rs.next() || rs.getInt(1) == 0;
+        }
+    }
+
+    /**
+     * Up to {@code limit} medicines in (name, id) order, starting {@code skip}
+     * rows after the key {@code (afterName, afterId)}, or from the top when
+     * {@code afterName} is null.
+     */
+    List<Medicine> findPage(String afterName, int afterId, int limit, int skip) throws SQLException {
+        PreparedStatement pstmt;
+        int index = 1;
+        if (afterName == null) {
+            pstmt = statements.prepare(FIRST_PAGE);
+        } else {
+            pstmt = statements.prepare(PAGE_AFTER);
+            pstmt.setString(index++, afterName);
+            pstmt.setInt(index++, afterId);
+        }
+        pstmt.setInt(index++, limit);
+        pstmt.setInt(index, skip);
+        return readAll(pstmt);
+    }
+
+    /** The medicine with {@code id}, or null. */
+    Medicine findById(int id) throws SQLException {
+        PreparedStatement pstmt = statements.prepare(BY_ID);
+        pstmt.setInt(1, id);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? Medicine.read(rs) : null;
+        }
+    }
+
+    List<Medicine> search(String term, int limit) throws SQLException {
+        return MedicineSearch.search(statements, term, limit);
+    }
+
+    List<Medicine> findInStock() throws SQLException {
+        return readAll(statements.prepare(IN_STOCK));
+    }
+
+    /** Id, name, batch, expiry, quantity, price and reorder level only, for the stock counters and the ledger. */
+    void forEachStockLevel(RowHandler<Medicine> handler) throws SQLException {
+        try (ResultSet rs = statements.prepare(STOCK_LEVELS).executeQuery()) {
+            while (rs.next()) {
+                Medicine med = new Medicine();
+                med.id = rs.getInt("id");
+                med.name = rs.getString("name");
+                med.batchNumber = rs.getString("batch_number");
+                med.expiryDate = rs.getString("expiry_date");
+                med.quantity = rs.getInt("quantity");
+                med.priceNgwee = rs.getLong("price_ngwee");
+                med.reorderLevel = rs.getInt("reorder_level");
+                handler.accept(med);
+            }
+        }
+    }
+
+    void forEachByName(RowHandler<Medicine> handler) throws SQLException {
+        forEach(statements.prepare(ALL_BY_NAME), handler);
+    }
+
+    void forEachExpiredBefore(String date, RowHandler<Medicine> handler) throws SQLException {
+        PreparedStatement pstmt = statements.prepare(EXPIRED_BEFORE);
+        pstmt.setString(1, date);
+        forEach(pstmt, handler);
+    }
+
+    /** Inserts {@code med} and returns its new id. */
+    int insert(Medicine med) throws SQLException {
+        PreparedStatement pstmt = statements.prepare(INSERT);
+        pstmt.setString(1, med.name);
+        pstmt.setString(2, med.batchNumber);
+        pstmt.setString(3, med.expiryDate);
+        pstmt.setInt(4, med.quantity);
+        pstmt.setLong(5, med.priceNgwee);
+        pstmt.setInt(6, med.reorderLevel);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    int update(Medicine med) throws SQLException {
+        PreparedStatement pstmt = statements.prepare(UPDATE);
+        pstmt.setString(1, med.name);
+        pstmt.setString(2, med.batchNumber);
+        pstmt.setString(3, med.expiryDate);
+        pstmt.setInt(4, med.quantity);
+        pstmt.setLong(5, med.priceNgwee);
+        pstmt.setInt(6, med.reorderLevel);
+        pstmt.setInt(7, med.id);
+        return pstmt.executeUpdate();
+    }
+
+    int delete(int id) throws SQLException {
+        PreparedStatement pstmt = statements.prepare(DELETE);
+        pstmt.setInt(1, id);
+        return pstmt.executeUpdate();
+    }
+
+    /**
+     * Upserts {@code rows} on (name, batch_number): one batched UPDATE for all
+     * rows, then one batched INSERT for those that matched nothing. Run it
+     * inside a transaction. Returns {inserted, updated}.
+     */
+    int[] upsertAll(List<Medicine> rows) throws SQLException {
+        PreparedStatement update = statements.prepare(UPDATE_BY_BATCH);
+        int[] matched;
+        try {
+            for (Medicine med : rows) {
+                update.setString(1, med.expiryDate);
+                update.setInt(2, med.quantity);
+                update.setLong(3, med.priceNgwee);
+                update.setString(4, med.name);
+                update.setString(5, med.batchNumber);
+                update.addBatch();
+            }
+            matched = update.executeBatch();
+        } finally {
+            update.clearBatch();
+        }
+
+        PreparedStatement insert = statements.prepare(INSERT_PLAIN);
+        int inserted = 0;
+        try {
+            for (int i = 0; i < rows.size(); i++) {
+                if (matched[i] > 0) continue;
+                Medicine med = rows.get(i);
+                insert.setString(1, med.name);
+                insert.setString(2, med.batchNumber);
+                insert.setString(3, med.expiryDate);
+                insert.setInt(4, med.quantity);
+                insert.setLong(5, med.priceNgwee);
+                insert.setInt(6, med.reorderLevel);
+                insert.addBatch();
+                inserted++;
+            }
+            if (inserted > 0) insert.executeBatch();
+        } finally {
+            insert.clearBatch();
+        }
+        return new int[]{inserted, rows.size() - inserted};
+    }
+
+    /** Adds the per-batch reorder level; existing batches get the default. */
+    static void addReorderLevel(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM pragma_table_info('medicines') WHERE name = 'reorder_level'")) {
+                if (rs.next() && rs.getInt(1) > 0) return; // ADD COLUMN has no IF NOT EXISTS
+            }
+            stmt.execute("ALTER TABLE medicines ADD COLUMN reorder_level INTEGER NOT NULL DEFAULT "
+                    + Medicine.DEFAULT_REORDER_LEVEL);
+        }
+    }
+
+    /** Moves batch prices from REAL kwacha to INTEGER ngwee, rounding each to the ngwee. */
+    static void priceAsNgwee(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM pragma_table_info('medicines') WHERE name = 'price_ngwee'")) {
+                if (rs.next() && rs.getInt(1) > 0) return;
+            }
+            stmt.execute("ALTER TABLE medicines ADD COLUMN price_ngwee INTEGER NOT NULL DEFAULT 0");
+            stmt.execute("UPDATE medicines SET price_ngwee = CAST(ROUND(price * 100) AS INTEGER)");
+            stmt.execute("ALTER TABLE medicines DROP COLUMN price");
+        }
+    }
+
+    static List<Medicine> readAll(PreparedStatement pstmt) throws SQLException {
+        List<Medicine> rows = new ArrayList<>();
+        forEach(pstmt, rows::add);
+        return rows;
+    }
+
+    private static void forEach(PreparedStatement pstmt, RowHandler<Medicine> handler) throws SQLException {
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                handler.accept(Medicine.read(rs));
+            }
+        }
+    }
+}
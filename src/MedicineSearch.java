@@ -0,0 +1,120 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Full-text search over medicine name and batch number, backed by the
+ * {@code medicines_fts} FTS5 table. The table uses the trigram tokenizer, so
+ * any substring of three or more characters is an index lookup instead of the
+ * old {@code LIKE '%x%'} table scan. Results are ranked with bm25, name
+ * matches weighing more than batch matches. When a term finds next to
+ * nothing, its trigrams are OR-ed together so a misspelt name still surfaces
+ * the closest medicines first.
+ */
+final class MedicineSearch {
+    static final int MAX_RESULTS = 200;
+    private static final int FUZZY_BELOW = 5; // fall back to fuzzy matching under this many hits
+
+    private static final String RANKED_MATCH =
+            "SELECT m.* FROM medicines_fts f JOIN medicines m ON m.id = f.rowid " +
+            "WHERE medicines_fts MATCH ? ORDER BY bm25(medicines_fts, 10.0, 1.0), m.name, m.id LIMIT ?";
+    private static final String PREFIX_MATCH =
+            "SELECT * FROM medicines WHERE name LIKE ? ESCAPE '\\' OR batch_number LIKE ? ESCAPE '\\' " +
+            "ORDER BY name, id LIMIT ?";
+
+    private MedicineSearch() {
+    }
+
+    /** Creates the FTS table and its sync triggers, indexing existing rows the first time. */
+    static void createIndex(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            createIndex(stmt);
+        }
+    }
+
+    private static void createIndex(Statement stmt) throws SQLException {
+        boolean exists;
+        try (ResultSet rs = stmt.executeQuery(
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'medicines_fts'")) {
+            exists = rs.next() && rs.getInt(1) > 0;
+        }
+
+        stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS medicines_fts USING fts5(" +
+                "name, batch_number, content='medicines', content_rowid='id', tokenize='trigram')");
+
+        // Keep the index in step with the medicines table
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS medicines_fts_insert AFTER INSERT ON medicines BEGIN " +
+                "INSERT INTO medicines_fts(rowid, name, batch_number) VALUES (new.id, new.name, new.batch_number); END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS medicines_fts_delete AFTER DELETE ON medicines BEGIN " +
+                "INSERT INTO medicines_fts(medicines_fts, rowid, name, batch_number) " +
+                "VALUES ('delete', old.id, old.name, old.batch_number); END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS medicines_fts_update AFTER UPDATE OF name, batch_number ON medicines BEGIN " +
+                "INSERT INTO medicines_fts(medicines_fts, rowid, name, batch_number) " +
+                "VALUES ('delete', old.id, old.name, old.batch_number); " +
+                "INSERT INTO medicines_fts(rowid, name, batch_number) VALUES (new.id, new.name, new.batch_number); END");
+
+        if (!exists) {
+            stmt.execute("INSERT INTO medicines_fts(medicines_fts) VALUES ('rebuild')");
+        }
+    }
+
+    /** Best matches for {@code term}, most relevant first. */
+    static List<Medicine> search(StatementCache statements, String term, int limit) throws SQLException {
+        String needle = term.trim();
+        if (needle.codePointCount(0, needle.length()) < 3) {
+            return prefixSearch(statements, needle, limit); // too short for a trigram
+        }
+
+        List<Medicine> results = match(statements, phrase(needle), limit);
+        if (results.size() < FUZZY_BELOW) {
+            String fuzzy = trigramQuery(needle);
+            if (fuzzy != null) {
+                Set<Integer> seen = new LinkedHashSet<>();
+                for (Medicine med : results) seen.add(med.id);
+                for (Medicine med : match(statements, fuzzy, limit)) {
+                    if (results.size() >= limit) break;
+                    if (seen.add(med.id)) results.add(med);
+                }
+            }
+        }
+        return results;
+    }
+
+    private static List<Medicine> match(StatementCache statements, String query, int limit) throws SQLException {
+        PreparedStatement pstmt = statements.prepare(RANKED_MATCH);
+        pstmt.setString(1, query);
+        pstmt.setInt(2, limit);
+        return MedicineRepository.readAll(pstmt);
+    }
+
+    // One or two characters: SQLite turns each prefix LIKE into a range on its NOCASE index, then sorts the hits
+    private static List<Medicine> prefixSearch(StatementCache statements, String prefix, int limit) throws SQLException {
+        PreparedStatement pstmt = statements.prepare(PREFIX_MATCH);
+        String pattern = prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        pstmt.setString(1, pattern);
+        pstmt.setString(2, pattern);
+        pstmt.setInt(3, limit);
+        return MedicineRepository.readAll(pstmt);
+    }
+
+    // A quoted FTS5 string is a substring match under the trigram tokenizer
+    private static String phrase(String text) {
+        return "\"" + text.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String trigramQuery(String term) {
+        String lower = term.toLowerCase(Locale.ROOT);
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            String gram = lower.substring(i, i + 3);
+            if (!gram.isBlank()) trigrams.add(phrase(gram));
+        }
+        return trigrams.size() < 2 ? null : String.join(" OR ", trigrams);
+    }
+}
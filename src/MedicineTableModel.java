@@ -0,0 +1,481 @@
+import javax.swing.table.AbstractTableModel;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Virtual table model for the medicine grid. Only the row count is known up
+ * front; rows are fetched a page at a time as the table asks for them, using
+ * keyset pagination on {@code (name, id)}. A bounded LRU cache keeps memory
+ * flat no matter how large the catalog gets, and the next page is prefetched
+ * once the user scrolls past the middle of the current one.
+ *
+ * <p>With a search term the model instead holds the ranked hits from
+ * {@link MedicineSearch}, which are capped and so never need paging.
+ *
+ * <p>Single-row changes arrive as {@link MedicineDelta}s and are patched into
+ * the cached pages, shifting later rows along, instead of reloading. A row
+ * is located by its key among the pages already held, without a query; one
+ * that falls between them only drops the pages from there on, which are
+ * read again by keyset when they are next shown.
+ *
+ * <p>Confined to the EDT; all queries go through the {@link DataAccessExecutor}.
+ */
+public class MedicineTableModel extends AbstractTableModel {
+    static final int PAGE_SIZE = 100;
+    private static final int MAX_CACHED_PAGES = 30;
+    private static final String[] COLUMNS = {"ID", "Name", "Batch", "Expiry Date", "Quantity", "Price"};
+
+    private final DataAccessExecutor dataAccess;
+
+    private final Map<Integer, List<Medicine>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Medicine>> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    // last (name, id) of every page seen so far, used as the keyset anchor for the next page
+    private final TreeMap<Integer, PageKey> pageEnds = new TreeMap<>();
+    private final Map<Integer, CompletableFuture<?>> loading = new HashMap<>();
+
+    private CompletableFuture<?> countRequest;
+    private String filter; // search term, or null for the whole catalog
+    private List<Medicine> searchResults; // ranked hits while filtering, null when paging the catalog
+    private int rowCount;
+    private int generation; // bumped on every reload so late pages from an old query are dropped
+    private Consumer<? super Exception> errorHandler = Throwable::printStackTrace;
+
+    public MedicineTableModel(DataAccessExecutor dataAccess) {
+        this.dataAccess = dataAccess;
+    }
+
+    /** Drops everything cached and re-counts the rows matching {@code searchTerm} (null or empty for all). */
+    public void load(String searchTerm) {
+        filter = searchTerm == null || searchTerm.isEmpty() ? null : searchTerm;
+        generation++;
+        if (countRequest != null) {
+            countRequest.cancel(false);
+        }
+        for (CompletableFuture<?> pending : loading.values()) {
+            pending.cancel(false);
+        }
+        loading.clear();
+        pages.clear();
+        pageEnds.clear();
+
+        int requestGeneration = generation;
+        if (filter != null) {
+            String term = filter;
+            Metrics.Action search = Metrics.startAction("medicines.search"); // a superseded search is never ended
+            countRequest = dataAccess.read(db -> db.medicines.search(term, MedicineSearch.MAX_RESULTS),
+                    results -> {
+                        if (requestGeneration != generation) return;
+                        searchResults = results;
+                        rowCount = results.size();
+                        fireTableDataChanged();
+                        search.end();
+                    }, e -> {
+                        if (requestGeneration != generation) return;
+                        search.failed();
+                        errorHandler.accept(e);
+                    });
+            return;
+        }
+
+        Metrics.Action count = Metrics.startAction("medicines.load");
+        countRequest = dataAccess.read(db -> db.medicines.count(), rows -> {
+            if (requestGeneration != generation) return;
+            searchResults = null;
+            rowCount = rows;
+            fireTableDataChanged();
+            count.end();
+        }, e -> {
+            if (requestGeneration != generation) return;
+            count.failed();
+            errorHandler.accept(e);
+        });
+    }
+
+    public void reload() {
+        load(filter);
+    }
+
+    /** Applies one committed change in place, firing only the affected rows. */
+    public void apply(MedicineDelta delta) {
+        if (filter != null) {
+            applyToSearchResults(delta);
+            return;
+        }
+        if (countRequest != null && !countRequest.isDone()) {
+            reload(); // the count in flight may or may not include this change
+            return;
+        }
+
+        Medicine med = delta.medicine;
+        Medicine before = delta.before;
+        if (delta.kind == MedicineDelta.Kind.UPDATED && before.name.equals(med.name)) {
+            int row = locate(med.name, med.id);
+            Medicine shown = row >= 0 ? getCached(row) : null;
+            if (shown != null && shown.id == med.id) {
+                pages.get(row / PAGE_SIZE).set(row % PAGE_SIZE, med);
+                fireTableRowsUpdated(row, row);
+            }
+            return; // otherwise its page isn't held and will be read fresh
+        }
+        if (before != null) {
+            int row = locate(before.name, before.id);
+            if (row < 0) {
+                row = firstPageAfter(before.name, before.id) * PAGE_SIZE;
+                dropPagesFrom(row / PAGE_SIZE);
+            } else {
+                removeRow(row);
+            }
+            rowCount--;
+            fireTableRowsDeleted(row, row);
+        }
+        if (delta.kind != MedicineDelta.Kind.DELETED) {
+            int row = locate(med.name, med.id);
+            if (row < 0) {
+                row = Math.min(firstPageAfter(med.name, med.id) * PAGE_SIZE, rowCount);
+                dropPagesFrom(row / PAGE_SIZE);
+            } else {
+                insertRow(row, med);
+            }
+            rowCount++;
+            fireTableRowsInserted(row, row);
+        }
+        refetchIncompletePages();
+    }
+
+    /** Swaps in new values for a medicine whose name did not change, wherever it is cached. */
+    public void replace(Medicine med) {
+        if (searchResults != null) {
+            for (int row = 0; row < searchResults.size(); row++) {
+                if (searchResults.get(row).id == med.id) {
+                    searchResults.set(row, med);
+                    fireTableRowsUpdated(row, row);
+                    return;
+                }
+            }
+            return;
+        }
+        for (Map.Entry<Integer, List<Medicine>> entry : pages.entrySet()) {
+            List<Medicine> rows = entry.getValue();
+            for (int offset = 0; offset < rows.size(); offset++) {
+                if (rows.get(offset).id == med.id) {
+                    rows.set(offset, med);
+                    int row = entry.getKey() * PAGE_SIZE + offset;
+                    fireTableRowsUpdated(row, row);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void applyToSearchResults(MedicineDelta delta) {
+        if (searchResults == null || delta.kind == MedicineDelta.Kind.INSERTED) {
+            reload(); // whether a new row matches is up to the search, re-running it is cheap
+            return;
+        }
+        for (int row = 0; row < searchResults.size(); row++) {
+            if (searchResults.get(row).id != delta.medicine.id) continue;
+            if (delta.kind == MedicineDelta.Kind.DELETED) {
+                searchResults.remove(row);
+                rowCount--;
+                fireTableRowsDeleted(row, row);
+            } else {
+                searchResults.set(row, delta.medicine);
+                fireTableRowsUpdated(row, row);
+            }
+            return;
+        }
+    }
+
+    /**
+     * The row holding {@code (name, id)}, or the row it would be inserted at,
+     * found from the page ends and the rows of the pages held; -1 when it
+     * lies in a page that isn't held.
+     */
+    private int locate(String name, int id) {
+        if (rowCount == 0) return 0;
+        Map.Entry<Integer, PageKey> end = null;
+        for (Map.Entry<Integer, PageKey> entry : pageEnds.entrySet()) {
+            if (compare(name, id, entry.getValue()) <= 0) {
+                end = entry;
+                break;
+            }
+        }
+        int page = end != null ? end.getKey() : (rowCount - 1) / PAGE_SIZE;
+        List<Medicine> rows = pages.get(page);
+        if (rows == null || rows.isEmpty()) return -1;
+        if (end == null && page * PAGE_SIZE + rows.size() < rowCount) return -1; // past everything held
+        int low = 0;
+        int high = rows.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Medicine row = rows.get(mid);
+            if (compare(row.name, row.id, name, id) < 0) low = mid + 1;
+            else high = mid;
+        }
+        if (low == 0 && page > 0 && !pageEnds.containsKey(page - 1)) {
+            return -1; // may belong at the end of the page before, which isn't held
+        }
+        return page * PAGE_SIZE + low;
+    }
+
+    // the first page that may hold (name, id): the one after the last page known to end before it
+    private int firstPageAfter(String name, int id) {
+        int page = 0;
+        for (Map.Entry<Integer, PageKey> entry : pageEnds.entrySet()) {
+            if (compare(name, id, entry.getValue()) <= 0) break;
+            page = entry.getKey() + 1;
+        }
+        return page;
+    }
+
+    private Medicine getCached(int row) {
+        List<Medicine> rows = pages.get(row / PAGE_SIZE);
+        int offset = row % PAGE_SIZE;
+        return rows != null && offset < rows.size() ? rows.get(offset) : null;
+    }
+
+    private static int compare(String name, int id, PageKey key) {
+        return compare(name, id, key.name, key.id);
+    }
+
+    // (name, id) as SQLite orders it: BINARY collation compares UTF-8 bytes, i.e. code points, not UTF-16 chars
+    private static int compare(String name, int id, String otherName, int otherId) {
+        int i = 0;
+        int j = 0;
+        while (i < name.length() && j < otherName.length()) {
+            int a = name.codePointAt(i);
+            int b = otherName.codePointAt(j);
+            if (a != b) return Integer.compare(a, b);
+            i += Character.charCount(a);
+            j += Character.charCount(b);
+        }
+        int c = Integer.compare(name.length() - i, otherName.length() - j);
+        return c != 0 ? c : Integer.compare(id, otherId);
+    }
+
+    // rows after the removed one move up a slot, carried across cached pages until one is missing
+    private void removeRow(int row) {
+        int page = row / PAGE_SIZE;
+        List<Medicine> rows = pages.get(page);
+        if (rows == null) {
+            dropPagesFrom(page);
+            return;
+        }
+        cancelLoadsFrom(page);
+        int offset = row % PAGE_SIZE;
+        if (offset < rows.size()) {
+            rows.remove(offset);
+        }
+        for (int p = page; ; p++) {
+            List<Medicine> next = pages.get(p + 1);
+            if (next == null) {
+                updatePageEnd(p, pages.get(p));
+                dropPagesFrom(p + 1);
+                return;
+            }
+            List<Medicine> current = pages.get(p);
+            if (!next.isEmpty()) {
+                current.add(next.remove(0));
+            }
+            updatePageEnd(p, current);
+        }
+    }
+
+    // rows after the inserted one move down a slot, the overflow carried into the next cached page
+    private void insertRow(int row, Medicine med) {
+        int page = row / PAGE_SIZE;
+        List<Medicine> rows = pages.get(page);
+        if (rows == null) {
+            dropPagesFrom(page);
+            return;
+        }
+        cancelLoadsFrom(page);
+        rows.add(Math.min(row % PAGE_SIZE, rows.size()), med);
+        for (int p = page; ; p++) {
+            List<Medicine> current = pages.get(p);
+            if (current.size() <= PAGE_SIZE) {
+                updatePageEnd(p, current);
+                return;
+            }
+            Medicine carry = current.remove(current.size() - 1);
+            updatePageEnd(p, current);
+            List<Medicine> next = pages.get(p + 1);
+            if (next == null) {
+                dropPagesFrom(p + 1);
+                return;
+            }
+            next.add(0, carry);
+        }
+    }
+
+    // a page cut short by a shift keeps showing what it has until its refetch lands
+    private void refetchIncompletePages() {
+        for (Map.Entry<Integer, List<Medicine>> entry : new ArrayList<>(pages.entrySet())) {
+            int page = entry.getKey();
+            int expected = Math.min(PAGE_SIZE, rowCount - page * PAGE_SIZE);
+            if (expected <= 0) {
+                pages.remove(page);
+                pageEnds.remove(page);
+            } else if (entry.getValue().size() != expected) {
+                fetchPage(page);
+            }
+        }
+    }
+
+    private void updatePageEnd(int page, List<Medicine> rows) {
+        if (rows.isEmpty()) {
+            pageEnds.remove(page);
+        } else {
+            Medicine last = rows.get(rows.size() - 1);
+            pageEnds.put(page, new PageKey(last.name, last.id));
+        }
+    }
+
+    private void dropPagesFrom(int page) {
+        cancelLoadsFrom(page);
+        pages.keySet().removeIf(p -> p >= page);
+        pageEnds.tailMap(page).clear();
+    }
+
+    private void cancelLoadsFrom(int page) {
+        loading.entrySet().removeIf(entry -> {
+            if (entry.getKey() < page) return false;
+            entry.getValue().cancel(false);
+            return true;
+        });
+    }
+
+    /** The medicine shown at {@code row}, or null while its page is still loading. */
+    public Medicine getMedicineAt(int row) {
+        if (searchResults != null) {
+            return row < searchResults.size() ? searchResults.get(row) : null;
+        }
+        int page = row / PAGE_SIZE;
+        List<Medicine> rows = pages.get(page);
+        if (rows == null) {
+            requestPage(page);
+            return null;
+        }
+        int offset = row % PAGE_SIZE;
+        if (offset >= PAGE_SIZE / 2) {
+            requestPage(page + 1); // prefetch ahead of the scroll
+        }
+        return offset < rows.size() ? rows.get(offset) : null;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        switch (column) {
+            case 0:
+            case 4:
+                return Integer.class;
+            case 5:
+                return BigDecimal.class;
+            default:
+                return String.class;
+        }
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Medicine med = getMedicineAt(row);
+        if (med == null) return null;
+        switch (column) {
+            case 0: return med.id;
+            case 1: return med.name;
+            case 2: return med.batchNumber;
+            case 3: return med.expiryDate;
+            case 4: return med.quantity;
+            case 5: return BigDecimal.valueOf(med.priceNgwee, 2); // kwacha, sorts and aligns as a number
+            default: return null;
+        }
+    }
+
+    /** Where load failures are reported, e.g. a dialog on the owning panel. */
+    public void setErrorHandler(Consumer<? super Exception> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    private void requestPage(int page) {
+        if (pages.containsKey(page)) {
+            return;
+        }
+        fetchPage(page);
+    }
+
+    private void fetchPage(int page) {
+        if (page * PAGE_SIZE >= rowCount || loading.containsKey(page)) {
+            return;
+        }
+
+        // Seek from the nearest page end we know; sequential scrolling always has the previous one
+        Map.Entry<Integer, PageKey> anchor = pageEnds.floorEntry(page - 1);
+        PageKey after = anchor == null ? null : anchor.getValue();
+        int skip = (anchor == null ? page : page - anchor.getKey() - 1) * PAGE_SIZE;
+        int requestGeneration = generation;
+
+        CompletableFuture<List<Medicine>> future = dataAccess.read(
+                db -> db.medicines.findPage(after == null ? null : after.name, after == null ? 0 : after.id, PAGE_SIZE, skip),
+                rows -> {
+            if (requestGeneration != generation) return;
+            loading.remove(page);
+            pages.put(page, rows);
+            if (!rows.isEmpty()) {
+                Medicine last = rows.get(rows.size() - 1);
+                pageEnds.put(page, new PageKey(last.name, last.id));
+            }
+            int first = page * PAGE_SIZE;
+            int lastRow = Math.min(first + PAGE_SIZE, rowCount) - 1;
+            if (lastRow >= first) {
+                fireTableRowsUpdated(first, lastRow);
+            }
+        }, e -> {
+            if (requestGeneration != generation) return;
+            loading.remove(page);
+            pages.put(page, new ArrayList<>()); // don't retry on every repaint, the next reload will
+            errorHandler.accept(e);
+        });
+        loading.put(page, future);
+    }
+
+    private static final class PageKey {
+        final String name;
+        final int id;
+
+        PageKey(String name, int id) {
+            this.name = name;
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where the time goes: every SQL statement (timed by {@link TimedStatement})
+ * and every user action is recorded into a {@link LatencyHistogram}, read
+ * over JMX through {@link LatencyMXBean}, and emitted as a JFR event with its
+ * SQL text or action name, row count and duration. So a live till can be
+ * profiled with {@code jcmd <pid> JFR.start} or JConsole, no debugger needed.
+ *
+ * <p>On by default; {@code -Dpharmacy.metrics=false} leaves statements
+ * unwrapped and actions untimed.
+ */
+final class Metrics {
+    static final boolean ENABLED = !"false".equals(System.getProperty("pharmacy.metrics"));
+    static final String OBJECT_NAME = "pharmacy:type=Latency";
+
+    private static final Map<String, Timer> QUERIES = new ConcurrentHashMap<>();
+    private static final Map<String, Timer> ACTIONS = new ConcurrentHashMap<>();
+    private static final Set<StatementCache> CACHES = ConcurrentHashMap.newKeySet(); // one per open session
+    private static final LongAdder closedCacheHits = new LongAdder();
+    private static final LongAdder closedCacheMisses = new LongAdder();
+
+    private Metrics() {
+    }
+
+    /** Latency, rows and failures of one query or action. */
+    static final class Timer {
+        final String name;
+        final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos, long rowCount, boolean failed) {
+            latency.record(nanos);
+            rows.add(rowCount);
+            if (failed) failures.increment();
+        }
+
+        LatencyMXBean.Timing timing() {
+            LatencyHistogram.Snapshot s = latency.snapshot();
+            return new LatencyMXBean.Timing(name, s.count, failures.sum(), rows.sum(), s.meanNanos() / 1e6,
+                    s.valueAt(0.50) / 1e6, s.valueAt(0.90) / 1e6, s.valueAt(0.99) / 1e6,
+                    s.valueAt(0.999) / 1e6, s.maxNanos / 1e6);
+        }
+
+        private void reset() {
+            latency.reset();
+            rows.reset();
+            failures.reset();
+        }
+    }
+
+    /** The timer for statements with this SQL text. */
+    static Timer query(String sql) {
+        return QUERIES.computeIfAbsent(sql, Timer::new);
+    }
+
+    /**
+     * Starts timing a user action. End it with {@link Action#end()} or
+     * {@link Action#failed()} once its result is on screen; one that is
+     * superseded is simply never ended.
+     */
+    static Action startAction(String name) {
+        return new Action(ENABLED ? ACTIONS.computeIfAbsent(name, Timer::new) : null);
+    }
+
+    /** Records an action that was timed some other way, such as startup. */
+    static void recordAction(String name, long nanos) {
+        if (ENABLED) ACTIONS.computeIfAbsent(name, Timer::new).record(nanos, 0, false);
+    }
+
+    /** Counts {@code cache}'s hits and misses towards the MXBean's totals until it is closed. */
+    static void track(StatementCache cache) {
+        if (ENABLED) CACHES.add(cache);
+    }
+
+    /** Keeps a closing cache's counts in the totals. */
+    static void untrack(StatementCache cache) {
+        if (CACHES.remove(cache)) {
+            closedCacheHits.add(cache.hits());
+            closedCacheMisses.add(cache.misses());
+        }
+    }
+
+    /** A user action in flight. Ending it more than once records it once. */
+    static final class Action {
+        private final Timer timer;
+        private final long started = System.nanoTime();
+        private final UserActionEvent event = new UserActionEvent();
+        private boolean ended;
+
+        private Action(Timer timer) {
+            this.timer = timer;
+            if (timer != null) event.begin();
+        }
+
+        void end() {
+            finish(false);
+        }
+
+        void failed() {
+            finish(true);
+        }
+
+        private void finish(boolean failed) {
+            if (timer == null || ended) return;
+            ended = true;
+            timer.record(System.nanoTime() - started, 0, failed);
+            event.end();
+            if (event.shouldCommit()) {
+                event.action = timer.name;
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
+
+    /** Registers the MXBean with the platform MBean server; safe to call more than once. */
+    static void register() {
+        if (!ENABLED) return;
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBean(), name);
+            }
+        } catch (JMException e) {
+            System.err.println("Could not register " + OBJECT_NAME + ": " + e.getMessage());
+        }
+    }
+
+    private static List<LatencyMXBean.Timing> timings(Map<String, Timer> timers) {
+        List<LatencyMXBean.Timing> timings = new ArrayList<>();
+        for (Timer timer : timers.values()) {
+            timings.add(timer.timing());
+        }
+        timings.sort(Comparator.comparingDouble(LatencyMXBean.Timing::getMeanMillis).reversed()); // slowest first
+        return timings;
+    }
+
+    private static final class MXBean implements LatencyMXBean {
+        @Override
+        public List<Timing> getQueries() {
+            return timings(QUERIES);
+        }
+
+        @Override
+        public List<Timing> getActions() {
+            return timings(ACTIONS);
+        }
+
+        @Override
+        public void reset() {
+            QUERIES.values().forEach(Timer::reset);
+            ACTIONS.values().forEach(Timer::reset);
+        }
+
+        @Override
+        public long getStatementCacheHits() {
+            long hits = closedCacheHits.sum();
+            for (StatementCache cache : CACHES) {
+                hits += cache.hits();
+            }
+            return hits;
+        }
+
+        @Override
+        public long getStatementCacheMisses() {
+            long misses = closedCacheMisses.sum();
+            for (StatementCache cache : CACHES) {
+                misses += cache.misses();
+            }
+            return misses;
+        }
+
+        @Override
+        public long getSlowQueryThresholdMillis() {
+            return SlowQueryLog.thresholdMillis();
+        }
+
+        @Override
+        public void setSlowQueryThresholdMillis(long millis) {
+            SlowQueryLog.setThresholdMillis(millis);
+        }
+    }
+
+    @Name("pharmacy.SqlQuery")
+    @Label("SQL Query")
+    @Category({"Pharmacy", "Database"})
+    @Description("One statement, from execute until its result set is closed")
+    @StackTrace(false)
+    static final class SqlQueryEvent extends Event {
+        @Label("SQL")
+        String sql;
+
+        @Label("Rows")
+        @Description("Rows read, or rows changed by an update or batch")
+        long rows;
+
+        @Label("Failed")
+        boolean failed;
+    }
+
+    @Name("pharmacy.UserAction")
+    @Label("User Action")
+    @Category({"Pharmacy", "User Interface"})
+    @Description("A search, checkout, report or API call, until its result is on screen or sent")
+    @StackTrace(false)
+    static final class UserActionEvent extends Event {
+        @Label("Action")
+        String action;
+
+        @Label("Failed")
+        boolean failed;
+    }
+}
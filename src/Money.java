@@ -0,0 +1,48 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Amounts of money as a {@code long} count of ngwee, 100 to the kwacha.
+ * Prices and totals are stored, summed and multiplied as whole ngwee, so a
+ * report over millions of sales adds up exactly; kwacha with two decimals
+ * only appear at the edges, when a user types a price or a row is shown.
+ */
+final class Money {
+
+    private Money() {
+    }
+
+    /**
+     * Parses kwacha as typed, such as {@code 12}, {@code 12.5} or
+     * {@code 12.50}, rounding half up to the ngwee.
+     *
+     * @throws NumberFormatException if {@code kwacha} is not a number or is too large
+     */
+    static long parse(String kwacha) {
+        try {
+            return new BigDecimal(kwacha.trim()).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + kwacha);
+        }
+    }
+
+    /** A kwacha amount from a JSON number or an old double, rounded half up to the ngwee. */
+    static long of(double kwacha) {
+        if (Double.isNaN(kwacha) || Double.isInfinite(kwacha)) {
+            throw new NumberFormatException("Not an amount: " + kwacha);
+        }
+        return parse(Double.toString(kwacha)); // the shortest decimal, so 1.005 stays 1.005
+    }
+
+    /** {@code ngwee} as kwacha with exactly two decimals, e.g. {@code 1250} as {@code 12.50}. */
+    static String format(long ngwee) {
+        return append(new StringBuilder(12), ngwee).toString();
+    }
+
+    static StringBuilder append(StringBuilder out, long ngwee) {
+        long kwacha = ngwee / 100;
+        int fraction = (int) Math.abs(ngwee % 100);
+        if (ngwee < 0 && kwacha == 0) out.append('-');
+        return out.append(kwacha).append('.').append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+    }
+}
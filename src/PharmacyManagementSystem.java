@@ -1,4 +1,6 @@
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.*;
@@ -6,77 +8,93 @@ import java.sql.*;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 //creating main class
 public class PharmacyManagementSystem {
     private static final String DB_URL = "jdbc:sqlite:pharmacy.db"; //initialze jdbc connection
-    private Connection connection;
+    private final DataAccessExecutor dataAccess = new DataAccessExecutor(DB_URL); //all JDBC work runs here, off the EDT
+    private final SalesAnalytics analytics = new SalesAnalytics(); //every sale as in-memory columns for ad-hoc reports
+    private final EventBus events = new EventBus(SwingUtilities::invokeLater); //keeps the tabs in step, delivered on the EDT
+    private final ExpiryScheduler expiryScheduler = new ExpiryScheduler(dataAccess, events); //flags batches as they near expiry
+    private final StockWatcher stockWatcher = new StockWatcher(dataAccess, events); //flags batches at their reorder level
+    private final StockLedger stockLedger = new StockLedger(dataAccess, events); //tills reserve stock here, so they can't oversell
+    private final SalesJournal salesJournal = new SalesJournal(SalesJournal.pathFor(DB_URL), dataAccess, events, analytics); //a sale is done once it's on disk here
+    private final CompletableFuture<Void> databaseReady = new CompletableFuture<>(); //logins wait on this, not the login frame
+    private final StartupTimer startup = new StartupTimer();
 
     public static void main(String[] args) {
+        if (java.util.Arrays.asList(args).contains("--server")) {
+            //headless HTTP API, nothing below touches Swing
+            try {
+                PharmacyServer.run(DB_URL, args);
+            } catch (Exception e) {
+                System.err.println("Could not start the server: " + e.getMessage());
+                e.printStackTrace();
+                System.exit(1);
+            }
+            return;
+        }
+        CompletableFuture.runAsync(Metrics::register); //query and action timings over JMX, the MBean server is slow to start
         SwingUtilities.invokeLater(() -> {
             new PharmacyManagementSystem().initializeSystem();
         });
     }
 
     public void initializeSystem() {
-        try {
-            // Load SQLite JDBC driver
-            Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection(DB_URL);
-            initializeDatabase();
-            new LoginFrame();
-        } catch (Exception e) {
+        // Schema work runs on the writer thread, which opens the database in WAL mode
+        dataAccess.write(db -> {
+            initializeDatabase(db);
+            salesJournal.recover(db); //sales from before a crash go in before anything reads stock
+            return null;
+        }, ignored -> {
+            salesJournal.start();
+            expiryScheduler.start();
+            stockWatcher.start();
+            stockLedger.start();
+            dataAccess.warmUp(); //reader connections and first-screen statements, before any other read
+            // load the sales columns while the user logs in
+            dataAccess.read(db -> {
+                analytics.catchUp(db);
+                return null;
+            });
+            databaseReady.complete(null);
+            startup.databaseReady();
+        }, e -> {
+            databaseReady.completeExceptionally(e);
             JOptionPane.showMessageDialog(null, "Database initialization error: " + e.getMessage());
             e.printStackTrace();
-        }
+        });
+        new LoginFrame(); //the user can start typing while the database opens
     }
 //creating SQL Code within the same java file so its easier for anyone to run it
     //Used AI to generate the part cause i was lazy
-    private void initializeDatabase() throws SQLException {
-        Statement stmt = connection.createStatement();
-
-        // Create usrs table
-        stmt.execute("CREATE TABLE IF NOT EXISTS users (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                "username TEXT UNIQUE NOT NULL," +
-                "password TEXT NOT NULL)");
-
-        // Create medicines table
-        stmt.execute("CREATE TABLE IF NOT EXISTS medicines (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                "name TEXT NOT NULL," +
-                "batch_number TEXT NOT NULL," +
-                "expiry_date DATE NOT NULL," +
-                "quantity INTEGER NOT NULL," +
-                "price REAL NOT NULL)");
-
-        // Create sales table
-        stmt.execute("CREATE TABLE IF NOT EXISTS sales (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                "medicine_id INTEGER," +
-                "medicine_name TEXT," +
-                "quantity INTEGER," +
-                "price_per_unit REAL," +
-                "total_amount REAL," +
-                "sale_date DATE," +
-                "FOREIGN KEY(medicine_id) REFERENCES medicines(id))");
+    static void initializeDatabase(DataSession db) throws SQLException {
+        Connection connection = db.connection();
+
+        // nothing to do on an ordinary launch, the schema and seed data were done last time
+        if (SchemaMigrations.isCurrent(connection)) return;
+
+        // Tables, search index and indexes are versioned in SchemaMigrations
+        if (SchemaMigrations.migrate(connection) > 0) {
+            for (String problem : SchemaMigrations.checkQueryPlans(connection)) {
+                System.err.println("Query not using its index: " + problem);
+            }
+        }
 
         // Insert default user if not exists
-        PreparedStatement pstmt = connection.prepareStatement(
-                "INSERT OR IGNORE INTO users (username, password) VALUES (?, ?)");
-        pstmt.setString(1, "admin");
-        pstmt.setString(2, "admin123");
-        pstmt.executeUpdate();
+        db.users.insertIfMissing("admin", "admin123");
 
         // Insert sample medicines if table is empty
-        ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM medicines");
-        if (rs.next() && rs.getInt(1) == 0) {
-            insertSampleData();
+        if (db.medicines.isEmpty()) {
+            insertSampleData(db);
         }
+        SchemaMigrations.markCurrent(connection); //last, so an interrupted first run is redone
     }
 
-    private void insertSampleData() throws SQLException {
+    private static void insertSampleData(DataSession db) throws SQLException {
         String[] sampleMedicines = {
                 "Paracetamol,BATCH001,2025-12-31,100,5.50",
                 "Aspirin,BATCH002,2025-06-30,75,8.25",
@@ -84,17 +102,15 @@ public class PharmacyManagementSystem {
                 "Amoxicillin,BATCH004,2025-03-20,25,15.75"
         };
 
-        PreparedStatement pstmt = connection.prepareStatement(
-                "INSERT INTO medicines (name, batch_number, expiry_date, quantity, price) VALUES (?, ?, ?, ?, ?)");
-
         for (String medicine : sampleMedicines) {
             String[] parts = medicine.split(",");
-            pstmt.setString(1, parts[0]);
-            pstmt.setString(2, parts[1]);
-            pstmt.setString(3, parts[2]);
-            pstmt.setInt(4, Integer.parseInt(parts[3]));
-            pstmt.setDouble(5, Double.parseDouble(parts[4]));
-            pstmt.executeUpdate();
+            Medicine med = new Medicine();
+            med.name = parts[0];
+            med.batchNumber = parts[1];
+            med.expiryDate = parts[2];
+            med.quantity = Integer.parseInt(parts[3]);
+            med.priceNgwee = Money.parse(parts[4]);
+            db.medicines.insert(med);
         }
     }
 
@@ -164,6 +180,12 @@ public class PharmacyManagementSystem {
             infoPanel.add(new JLabel("Default login: admin / admin123"));
             add(infoPanel, BorderLayout.SOUTH);
 
+            addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowOpened(WindowEvent e) {
+                    startup.loginShown();
+                }
+            });
             setVisible(true);
         }
 
@@ -171,25 +193,16 @@ public class PharmacyManagementSystem {
             String username = usernameField.getText().trim();
             String password = new String(passwordField.getPassword());
 
-            //basic authenticator using prepared statements
-            try {
-                PreparedStatement pstmt = connection.prepareStatement(
-                        "SELECT * FROM users WHERE username = ? AND password = ?");
-                pstmt.setString(1, username);
-                pstmt.setString(2, password);
-
-                ResultSet rs = pstmt.executeQuery();
-
-                if (rs.next()) {
+            //basic authenticator using prepared statements, held back until the database is open
+            databaseReady.thenRun(() -> dataAccess.read(db -> db.users.authenticate(username, password), valid -> {
+                if (valid) {
                     dispose();
                     new MainDashboard();
                 } else {
                     JOptionPane.showMessageDialog(this, "Invalid credentials!");
                     passwordField.setText("");
                 }
-            } catch (SQLException e) {
-                JOptionPane.showMessageDialog(this, "Authentication error: " + e.getMessage());
-            }
+            }, e -> JOptionPane.showMessageDialog(this, "Authentication error: " + e.getMessage())));
         }
     }
 
@@ -199,6 +212,8 @@ public class PharmacyManagementSystem {
         private MedicinePanel medicinePanel;
         private SalesPanel salesPanel;
         private ReportsPanel reportsPanel;
+        private final EventBus.Subscriptions subscriptions = events.newSubscriptions();
+        private final JLabel expiryStatus = new JLabel();
 
         public MainDashboard() {
             setTitle("Pharmacy Management System - Dashboard");
@@ -211,6 +226,8 @@ public class PharmacyManagementSystem {
             JMenu systemMenu = new JMenu("System");
             JMenuItem logoutItem = new JMenuItem("Logout");
             logoutItem.addActionListener(e -> {
+                subscriptions.close();
+                if (salesPanel != null) salesPanel.discardBasket(); //an abandoned basket must not keep its stock held
                 dispose(); //delete function
                 new LoginFrame();
             });
@@ -218,30 +235,62 @@ public class PharmacyManagementSystem {
             menuBar.add(systemMenu);
             setJMenuBar(menuBar);
 
-            // Create tabbed pane
+            // Create tabbed pane, each tab is built and loaded the first time it is opened
             tabbedPane = new JTabbedPane();
+            tabbedPane.addTab("Medicine Management", new JPanel(new BorderLayout()));
+            tabbedPane.addTab("Sales", new JPanel(new BorderLayout()));
+            tabbedPane.addTab("Reports", new JPanel(new BorderLayout()));
+            tabbedPane.addChangeListener(e -> buildSelectedTab());
+            buildSelectedTab();
 
-            medicinePanel = new MedicinePanel();
-            salesPanel = new SalesPanel();
-            reportsPanel = new ReportsPanel();
+            add(tabbedPane);
 
-            tabbedPane.addTab("Medicine Management", medicinePanel);
-            tabbedPane.addTab("Sales", salesPanel);
-            tabbedPane.addTab("Reports", reportsPanel);
+            //the scheduler keeps the counts, the alerts only tell us when to look again
+            expiryStatus.setBorder(BorderFactory.createEmptyBorder(3, 8, 3, 8));
+            add(expiryStatus, BorderLayout.SOUTH);
+            updateExpiryStatus();
+            subscriptions.on(ExpiryAlert.class, e -> updateExpiryStatus());
 
-            add(tabbedPane);
             setVisible(true);
         }
+
+        //fills the selected tab's placeholder on first visit, so the other tabs' queries wait until they're needed
+        private void buildSelectedTab() {
+            int index = tabbedPane.getSelectedIndex();
+            JPanel holder = (JPanel) tabbedPane.getComponentAt(index);
+            if (holder.getComponentCount() > 0) return;
+            JPanel panel;
+            if (index == 0) {
+                panel = medicinePanel = new MedicinePanel(subscriptions);
+            } else if (index == 1) {
+                panel = salesPanel = new SalesPanel(subscriptions);
+            } else {
+                panel = reportsPanel = new ReportsPanel(subscriptions);
+            }
+            holder.add(panel);
+            holder.revalidate();
+        }
+
+        private void updateExpiryStatus() {
+            int expired = expiryScheduler.expiredCount();
+            int nearExpiry = expiryScheduler.nearExpiryCount();
+            expiryStatus.setText(String.format("%d batches expired, %d expiring within %d days",
+                    expired, nearExpiry, ExpiryScheduler.WARN_DAYS));
+            expiryStatus.setForeground(expired > 0 ? Color.RED : nearExpiry > 0 ? Color.ORANGE.darker() : Color.DARK_GRAY);
+        }
     }
 
     // Medicine Panel
     class MedicinePanel extends JPanel {
         private JTable medicineTable;
-        private DefaultTableModel tableModel;
+        private MedicineTableModel tableModel; //pages rows in on demand instead of holding the whole catalog
         private JTextField searchField;
-        private JTextField nameField, batchField, expiryField, quantityField, priceField;
+        private Timer searchDebounce;
+        private JTextField nameField, batchField, expiryField, quantityField, priceField, reorderField;
+        private final DefaultListModel<String> lowStockModel = new DefaultListModel<>();
+        private final List<LowStockAlert> lowStockRows = new ArrayList<>(); //same order as lowStockModel
 
-        public MedicinePanel() {
+        public MedicinePanel(EventBus.Subscriptions subscriptions) {
             setLayout(new BorderLayout());
 
             // Top panel for search and add
@@ -251,6 +300,25 @@ public class PharmacyManagementSystem {
             JPanel searchPanel = new JPanel(new FlowLayout());
             searchPanel.add(new JLabel("Search:"));
             searchField = new JTextField(20);
+            //search as you type, but only once typing pauses
+            searchDebounce = new Timer(150, e -> searchMedicines());
+            searchDebounce.setRepeats(false);
+            searchField.getDocument().addDocumentListener(new DocumentListener() {
+                @Override
+                public void insertUpdate(DocumentEvent e) {
+                    searchDebounce.restart();
+                }
+
+                @Override
+                public void removeUpdate(DocumentEvent e) {
+                    searchDebounce.restart();
+                }
+
+                @Override
+                public void changedUpdate(DocumentEvent e) {
+                    searchDebounce.restart();
+                }
+            });
             searchPanel.add(searchField);
             JButton searchButton = new JButton("Search");
             searchButton.addActionListener(e -> searchMedicines());
@@ -259,7 +327,7 @@ public class PharmacyManagementSystem {
             topPanel.add(searchPanel, BorderLayout.WEST);
 
             // Adding our panels to form
-            JPanel addPanel = new JPanel(new GridLayout(2, 6, 5, 5));
+            JPanel addPanel = new JPanel(new GridLayout(2, 7, 5, 5));
             addPanel.setBorder(BorderFactory.createTitledBorder("Add/Update Medicine"));
 
             addPanel.add(new JLabel("Name:"));
@@ -282,6 +350,10 @@ public class PharmacyManagementSystem {
             priceField = new JTextField();
             addPanel.add(priceField);
 
+            addPanel.add(new JLabel("Reorder Level:"));
+            reorderField = new JTextField(String.valueOf(Medicine.DEFAULT_REORDER_LEVEL));
+            addPanel.add(reorderField);
+
             JButton addButton = new JButton("Add Medicine");
             addButton.addActionListener(e -> addMedicine());
             addPanel.add(addButton);
@@ -290,13 +362,8 @@ public class PharmacyManagementSystem {
             add(topPanel, BorderLayout.NORTH);
 
             // Medicine table
-            String[] columns = {"ID", "Name", "Batch", "Expiry Date", "Quantity", "Price"};
-            tableModel = new DefaultTableModel(columns, 0) {
-                @Override
-                public boolean isCellEditable(int row, int column) {
-                    return false;
-                }
-            };
+            tableModel = new MedicineTableModel(dataAccess);
+            tableModel.setErrorHandler(e -> JOptionPane.showMessageDialog(this, "Errr loading medicines: " + e.getMessage()));
             medicineTable = new JTable(tableModel);
             medicineTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
             medicineTable.addMouseListener(new MouseAdapter() {
@@ -311,6 +378,14 @@ public class PharmacyManagementSystem {
             JScrollPane scrollPane = new JScrollPane(medicineTable);
             add(scrollPane, BorderLayout.CENTER);
 
+            //live low stock list, kept current by the stock watcher's alerts instead of a query
+            JList<String> lowStockList = new JList<>(lowStockModel);
+            lowStockList.setForeground(Color.RED);
+            JScrollPane lowStockPane = new JScrollPane(lowStockList);
+            lowStockPane.setBorder(BorderFactory.createTitledBorder("Low Stock"));
+            lowStockPane.setPreferredSize(new Dimension(220, 0));
+            add(lowStockPane, BorderLayout.EAST);
+
             // Bottom panel for actions
             JPanel buttonPanel = new JPanel(new FlowLayout());
             JButton updateButton = new JButton("Update Selected");
@@ -325,68 +400,40 @@ public class PharmacyManagementSystem {
             refreshButton.addActionListener(e -> loadMedicines());
             buttonPanel.add(refreshButton);
 
-            JButton lowStockButton = new JButton("Check Low Stock");
-            lowStockButton.addActionListener(e -> checkLowStock());
-            buttonPanel.add(lowStockButton);
+            JButton importButton = new JButton("Import CSV");
+            importButton.addActionListener(e -> importCsv());
+            buttonPanel.add(importButton);
 
             add(buttonPanel, BorderLayout.SOUTH);
 
+            subscriptions
+                    .on(MedicineChanged.class, e -> {
+                        if (e.isBulk()) tableModel.reload();
+                        else tableModel.apply(e.delta);
+                    })
+                    .on(StockAdjusted.class, e -> tableModel.replace(e.medicine))
+                    .on(LowStockAlert.class, this::onLowStock);
+
+            for (LowStockAlert alert : stockWatcher.lowStock()) {
+                onLowStock(alert);
+            }
             loadMedicines();
         }
 
         private void loadMedicines() {
-            try {
-                Statement stmt = connection.createStatement();
-                ResultSet rs = stmt.executeQuery("SELECT * FROM medicines ORDER BY name");
-
-                tableModel.setRowCount(0);
-                while (rs.next()) {
-                    Object[] row = {
-                            rs.getInt("id"),
-                            rs.getString("name"),
-                            rs.getString("batch_number"),
-                            rs.getString("expiry_date"),
-                            rs.getInt("quantity"),
-                            rs.getDouble("price")
-                    };
-                    tableModel.addRow(row);
-                }
-            } catch (SQLException e) {
-                JOptionPane.showMessageDialog(this, "Errr loading medicines: " + e.getMessage());
-            }
+            tableModel.load(null);
         }
 
+        //ranked full-text hits, superseded searches are dropped by the model
         private void searchMedicines() {
+            searchDebounce.stop();
             String searchTerm = searchField.getText().trim();
             if (searchTerm.isEmpty()) {
                 loadMedicines();
                 return;
             }
 
-            try {
-                PreparedStatement pstmt = connection.prepareStatement(
-                        "SELECT * FROM medicines WHERE name LIKE ? OR batch_number LIKE ? ORDER BY name");
-                String pattern = "%" + searchTerm + "%";
-                pstmt.setString(1, pattern);
-                pstmt.setString(2, pattern);
-
-                ResultSet rs = pstmt.executeQuery();
-                tableModel.setRowCount(0);
-
-                while (rs.next()) {
-                    Object[] row = {
-                            rs.getInt("id"),
-                            rs.getString("name"),
-                            rs.getString("batch_number"),
-                            rs.getString("expiry_date"),
-                            rs.getInt("quantity"),
-                            rs.getDouble("price")
-                    };
-                    tableModel.addRow(row);
-                }
-            } catch (SQLException e) {
-                JOptionPane.showMessageDialog(this, "The error is: " + e.getMessage());
-            }
+            tableModel.load(searchTerm);
         }
 
         private void addMedicine() {
@@ -402,38 +449,40 @@ public class PharmacyManagementSystem {
                     return;
                 }
 
-                int quantity = Integer.parseInt(quantityStr);
-                double price = Double.parseDouble(priceStr);
-
-                PreparedStatement pstmt = connection.prepareStatement(
-                        "INSERT INTO medicines (name, batch_number, expiry_date, quantity, price) VALUES (?, ?, ?, ?, ?)");
-                pstmt.setString(1, name);
-                pstmt.setString(2, batch);
-                pstmt.setString(3, expiry);
-                pstmt.setInt(4, quantity);
-                pstmt.setDouble(5, price);
-
-                pstmt.executeUpdate();
-                clearFields();
-                loadMedicines();
-                JOptionPane.showMessageDialog(this, "Medicine added successfully!");
+                Medicine med = new Medicine();
+                med.name = name;
+                med.batchNumber = batch;
+                med.expiryDate = expiry;
+                med.quantity = Integer.parseInt(quantityStr);
+                med.priceNgwee = Money.parse(priceStr);
+                med.reorderLevel = parseReorderLevel();
+
+                dataAccess.write(db -> {
+                    MedicineDelta delta = MedicineDelta.insert(db, med);
+                    events.publish(new MedicineChanged(delta));
+                    return delta;
+                }, delta -> {
+                    clearFields();
+                    JOptionPane.showMessageDialog(this, "Medicine added successfully!");
+                }, e -> JOptionPane.showMessageDialog(this, "Error adding medicine: " + e.getMessage()));
 
             } catch (NumberFormatException e) {
-                JOptionPane.showMessageDialog(this, "Please enter valid numbers for quantity and price!");
-            } catch (SQLException e) {
-                JOptionPane.showMessageDialog(this, "Error adding medicine: " + e.getMessage());
+                JOptionPane.showMessageDialog(this, "Please enter valid numbers for quantity, price and reorder level!");
             }
         }
 //edit med method
         private void editSelectedMedicine() {
             int selectedRow = medicineTable.getSelectedRow();
             if (selectedRow == -1) return;
-
-            nameField.setText((String) tableModel.getValueAt(selectedRow, 1));
-            batchField.setText((String) tableModel.getValueAt(selectedRow, 2));
-            expiryField.setText((String) tableModel.getValueAt(selectedRow, 3));
-            quantityField.setText(String.valueOf(tableModel.getValueAt(selectedRow, 4)));
-            priceField.setText(String.valueOf(tableModel.getValueAt(selectedRow, 5)));
+            Medicine selected = tableModel.getMedicineAt(selectedRow);
+            if (selected == null) return; //page still loading
+
+            nameField.setText(selected.name);
+            batchField.setText(selected.batchNumber);
+            expiryField.setText(selected.expiryDate);
+            quantityField.setText(String.valueOf(selected.quantity));
+            priceField.setText(Money.format(selected.priceNgwee));
+            reorderField.setText(String.valueOf(selected.reorderLevel));
         }
  //update method when something is added
         private void updateMedicine() {
@@ -443,27 +492,27 @@ public class PharmacyManagementSystem {
                 return;
             }
 
+            Medicine selected = tableModel.getMedicineAt(selectedRow);
+            if (selected == null) return;
+
             try {
-                int id = (Integer) tableModel.getValueAt(selectedRow, 0);
-                String name = nameField.getText().trim();
-                String batch = batchField.getText().trim();
-                String expiry = expiryField.getText().trim();
-                int quantity = Integer.parseInt(quantityField.getText().trim());
-                double price = Double.parseDouble(priceField.getText().trim());
-
-                PreparedStatement pstmt = connection.prepareStatement(
-                        "UPDATE medicines SET name=?, batch_number=?, expiry_date=?, quantity=?, price=? WHERE id=?");
-                pstmt.setString(1, name);
-                pstmt.setString(2, batch);
-                pstmt.setString(3, expiry);
-                pstmt.setInt(4, quantity);
-                pstmt.setDouble(5, price);
-                pstmt.setInt(6, id);
-
-                pstmt.executeUpdate();
-                clearFields();
-                loadMedicines();
-                JOptionPane.showMessageDialog(this, "Medicine updated successfully!");
+                Medicine med = new Medicine();
+                med.id = selected.id;
+                med.name = nameField.getText().trim();
+                med.batchNumber = batchField.getText().trim();
+                med.expiryDate = expiryField.getText().trim();
+                med.quantity = Integer.parseInt(quantityField.getText().trim());
+                med.priceNgwee = Money.parse(priceField.getText());
+                med.reorderLevel = parseReorderLevel();
+
+                dataAccess.write(db -> {
+                    MedicineDelta delta = MedicineDelta.update(db, med);
+                    events.publish(new MedicineChanged(delta));
+                    return delta;
+                }, delta -> {
+                    clearFields();
+                    JOptionPane.showMessageDialog(this, "Medicine updated successfully!");
+                }, e -> JOptionPane.showMessageDialog(this, "Error updating medicine: " + e.getMessage()));
 
             } catch (Exception e) {
                 JOptionPane.showMessageDialog(this, "Error updating medicine: " + e.getMessage());
@@ -477,56 +526,93 @@ public class PharmacyManagementSystem {
                 return;
             }
 
+            Medicine selected = tableModel.getMedicineAt(selectedRow);
+            if (selected == null) return;
+
             int confirm = JOptionPane.showConfirmDialog(this,
                     "Are you sure you want to delete this medicine?", "Confirm Delete",
                     JOptionPane.YES_NO_OPTION);
 
             if (confirm == JOptionPane.YES_OPTION) {
-                try {
-                    int id = (Integer) tableModel.getValueAt(selectedRow, 0);
-                    PreparedStatement pstmt = connection.prepareStatement("DELETE FROM medicines WHERE id=?");
-                    pstmt.setInt(1, id);
-                    pstmt.executeUpdate();
-
-                    loadMedicines();
+                int id = selected.id;
+                dataAccess.write(db -> {
+                    MedicineDelta delta = MedicineDelta.delete(db, id);
+                    events.publish(new MedicineChanged(delta));
+                    return delta;
+                }, delta -> {
                     JOptionPane.showMessageDialog(this, "Medicine deleted successfully!");
+                }, e -> JOptionPane.showMessageDialog(this, "Error deleting medicine: " + e.getMessage()));
+            }
+        }
 
-                } catch (SQLException e) {
-                    JOptionPane.showMessageDialog(this, "Error deleting medicine: " + e.getMessage());
+        //one list entry per low batch, lowest stock first
+        private void onLowStock(LowStockAlert alert) {
+            for (int i = 0; i < lowStockRows.size(); i++) {
+                if (lowStockRows.get(i).medicineId == alert.medicineId) {
+                    lowStockRows.remove(i);
+                    lowStockModel.remove(i);
+                    break;
                 }
             }
+            if (!alert.low) return;
+
+            int at = 0;
+            while (at < lowStockRows.size() && lowStockRows.get(at).quantity <= alert.quantity) at++;
+            lowStockRows.add(at, alert);
+            lowStockModel.add(at, String.format("%s (%s): %d / %d",
+                    alert.name, alert.batchNumber, alert.quantity, alert.reorderLevel));
         }
 
-        private void checkLowStock() {
-            String thresholdStr = JOptionPane.showInputDialog(this,
-                    "Enter low stock threshold:", "10");
-            if (thresholdStr == null) return;
+        //supplier catalogs can be huge, stream them in batches off the EDT
+        private void importCsv() {
+            JFileChooser chooser = new JFileChooser();
+            if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+            java.io.File file = chooser.getSelectedFile();
 
-            try {
-                int threshold = Integer.parseInt(thresholdStr);
-                PreparedStatement pstmt = connection.prepareStatement(
-                        "SELECT * FROM medicines WHERE quantity <= ? ORDER BY quantity");
-                pstmt.setInt(1, threshold);
+            ProgressMonitor monitor = new ProgressMonitor(this, "Importing " + file.getName(), "", 0, 1000);
+            monitor.setMillisToDecideToPopup(200);
+            MedicineCsvImporter importer = new MedicineCsvImporter(dataAccess, MedicineCsvImporter.DEFAULT_BATCH_SIZE);
 
-                ResultSet rs = pstmt.executeQuery();
-                StringBuilder lowStockItems = new StringBuilder();
-
-                while (rs.next()) {
-                    lowStockItems.append(rs.getString("name"))
-                            .append(" (Qty: ").append(rs.getInt("quantity")).append(")\n");
+            new SwingWorker<MedicineCsvImporter.Result, Integer>() {
+                @Override
+                protected MedicineCsvImporter.Result doInBackground() throws Exception {
+                    return importer.importFile(file.toPath(), (read, total, soFar) ->
+                            publish(total == 0 ? 1000 : (int) (read * 1000 / total)));
                 }
 
-                if (lowStockItems.length() > 0) {
-                    JOptionPane.showMessageDialog(this,
-                            "Low Stock Items:\n" + lowStockItems.toString(),
-                            "Low Stock Alert", JOptionPane.WARNING_MESSAGE);
-                } else {
-                    JOptionPane.showMessageDialog(this, "No low stock items found!");
+                @Override
+                protected void process(List<Integer> chunks) {
+                    int progress = chunks.get(chunks.size() - 1);
+                    monitor.setProgress(progress);
+                    monitor.setNote((progress / 10) + "% read");
                 }
 
-            } catch (Exception e) {
-                JOptionPane.showMessageDialog(this, "Error checking low stock: " + e.getMessage());
-            }
+                @Override
+                protected void done() {
+                    monitor.close();
+                    events.publish(MedicineChanged.bulk());
+                    try {
+                        MedicineCsvImporter.Result result = get();
+                        StringBuilder summary = new StringBuilder()
+                                .append("Inserted: ").append(result.inserted)
+                                .append("\nUpdated: ").append(result.updated)
+                                .append("\nRejected: ").append(result.rejected);
+                        for (int i = 0; i < Math.min(20, result.rejections.size()); i++) {
+                            summary.append("\n  ").append(result.rejections.get(i));
+                        }
+                        if (result.rejected > 20) {
+                            summary.append("\n  ... and ").append(result.rejected - 20).append(" more");
+                        }
+                        JOptionPane.showMessageDialog(MedicinePanel.this, summary.toString(), "Import Complete",
+                                result.rejected > 0 ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE);
+                    } catch (Exception e) {
+                        Throwable cause = e.getCause() != null ? e.getCause() : e;
+                        JOptionPane.showMessageDialog(MedicinePanel.this,
+                                "Error importing medicines: " + cause.getMessage()
+                                        + "\nBatches written before the error were kept.");
+                    }
+                }
+            }.execute();
         }
 //method to clear fields that has been disposed of
         private void clearFields() {
@@ -535,19 +621,34 @@ public class PharmacyManagementSystem {
             expiryField.setText("");
             quantityField.setText("");
             priceField.setText("");
+            reorderField.setText(String.valueOf(Medicine.DEFAULT_REORDER_LEVEL));
+        }
+
+        //blank means the default level
+        private int parseReorderLevel() {
+            String level = reorderField.getText().trim();
+            return level.isEmpty() ? Medicine.DEFAULT_REORDER_LEVEL : Integer.parseInt(level);
         }
     }
 
     // Sales Panel
     class SalesPanel extends JPanel {
+        private static final int SALES_HISTORY_ROWS = 100;
         private JComboBox<String> medicineCombo;
         private JTextField quantityField;
         private JLabel priceLabel, totalLabel;
         private JTable salesTable;
         private DefaultTableModel salesTableModel;
-        private List<Medicine> medicines;
-
-        public SalesPanel() {
+        private DefaultTableModel basketTableModel;
+        private JLabel basketTotalLabel;
+        private Basket basket = new Basket(); //lines for the customer at the till
+        private StockLedger.Reservation held = stockLedger.newReservation(); //the basket's stock, taken off every till
+        private List<Medicine> medicines = new ArrayList<>(); //sellable batches in name order
+        private List<String> medicineNames = new ArrayList<>(); //one combo entry per name, same order
+        private final DataAccessExecutor.Slot medicinesRequest = dataAccess.newSlot();
+        private final DataAccessExecutor.Slot historyRequest = dataAccess.newSlot();
+
+        public SalesPanel(EventBus.Subscriptions subscriptions) {
             setLayout(new BorderLayout());
 
             // Sales form panel
@@ -593,12 +694,50 @@ public class PharmacyManagementSystem {
             gbc.gridx = 1; gbc.gridy = 3;
             formPanel.add(totalLabel, gbc);
 
+            JButton addToBasketButton = new JButton("Add to Basket");
+            addToBasketButton.addActionListener(e -> addToBasket());
+            gbc.gridx = 0; gbc.gridy = 4; gbc.gridwidth = 2;
+            formPanel.add(addToBasketButton, gbc);
+
+            // Basket panel, the whole basket is sold in one go
+            JPanel basketPanel = new JPanel(new BorderLayout());
+            basketPanel.setBorder(BorderFactory.createTitledBorder("Basket"));
+            String[] basketColumns = {"Medicine", "Quantity", "Price/Unit", "Total"};
+            basketTableModel = new DefaultTableModel(basketColumns, 0) {
+                @Override
+                public boolean isCellEditable(int row, int column) {
+                    return false;
+                }
+            };
+            JTable basketTable = new JTable(basketTableModel);
+            basketTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+            basketTable.setPreferredScrollableViewportSize(new Dimension(400, 100));
+            basketPanel.add(new JScrollPane(basketTable), BorderLayout.CENTER);
+
+            JPanel basketButtons = new JPanel(new FlowLayout());
+            basketTotalLabel = new JLabel("Basket Total: K0.00");
+            basketTotalLabel.setFont(new Font("Arial", Font.BOLD, 12));
+            basketButtons.add(basketTotalLabel);
+
+            JButton removeLineButton = new JButton("Remove Line");
+            removeLineButton.addActionListener(e -> {
+                int row = basketTable.getSelectedRow();
+                if (row >= 0) {
+                    held.release(basket.remove(row).medicine.name);
+                    refreshBasket();
+                }
+            });
+            basketButtons.add(removeLineButton);
+
             JButton sellButton = new JButton("Complete Sale");
             sellButton.addActionListener(e -> completeSale());
-            gbc.gridx = 0; gbc.gridy = 4; gbc.gridwidth = 2;
-            formPanel.add(sellButton, gbc);
+            basketButtons.add(sellButton);
+            basketPanel.add(basketButtons, BorderLayout.SOUTH);
 
-            add(formPanel, BorderLayout.NORTH);
+            JPanel topPanel = new JPanel(new GridLayout(1, 2));
+            topPanel.add(formPanel);
+            topPanel.add(basketPanel);
+            add(topPanel, BorderLayout.NORTH);
 
             // Sales history table
             String[] columns = {"ID", "Medicine", "Quantity", "Price/Unit", "Total", "Date"}; //Stored in an array
@@ -620,140 +759,271 @@ public class PharmacyManagementSystem {
             });
             add(refreshButton, BorderLayout.SOUTH);
 
+            subscriptions
+                    .on(MedicineChanged.class, e -> {
+                        if (e.isBulk()) loadMedicines();
+                        else onMedicineChanged(e.delta.medicine, e.delta.kind == MedicineDelta.Kind.DELETED);
+                    })
+                    .on(StockAdjusted.class, e -> onMedicineChanged(e.medicine, false))
+                    .on(SaleRecorded.class, this::onSaleRecorded);
+
             loadMedicines();
             loadSalesHistory();
         }
 
+        //the till sells by name; which batches go out is decided first-expiry-first-out at checkout
         private void loadMedicines() {
-            try {
+            String today = LocalDate.now().toString();
+            Metrics.Action load = Metrics.startAction("till.load");
+            medicinesRequest.read(db -> db.medicines.findInStock(), loaded -> {
                 medicines = new ArrayList<>();
+                medicineNames = new ArrayList<>();
                 medicineCombo.removeAllItems();
-
-                Statement stmt = connection.createStatement();
-                ResultSet rs = stmt.executeQuery("SELECT * FROM medicines WHERE quantity > 0 ORDER BY name");
-
-                while (rs.next()) {
-                    Medicine med = new Medicine();
-                    med.id = rs.getInt("id");
-                    med.name = rs.getString("name");
-                    med.quantity = rs.getInt("quantity");
-                    med.price = rs.getDouble("price");
+                for (Medicine med : loaded) {
+                    if (med.expiryDate.compareTo(today) < 0) continue; //expired batches are never sold
                     medicines.add(med);
-
-                    medicineCombo.addItem(med.name + " (Stock: " + med.quantity + ")");
+                    if (medicineNames.isEmpty() || !medicineNames.get(medicineNames.size() - 1).equals(med.name)) {
+                        medicineNames.add(med.name);
+                    }
+                }
+                for (String name : medicineNames) { //fill the lists first, addItem fires updatePriceLabel
+                    medicineCombo.addItem(comboLabel(name));
                 }
 
                 updatePriceLabel();
-
-            } catch (SQLException e) {
+                load.end();
+            }, e -> {
+                load.failed();
                 JOptionPane.showMessageDialog(this, "Error loading medicins: " + e.getMessage());
+            });
+        }
+
+        private String comboLabel(String name) {
+            return name + " (Stock: " + available(name) + ")";
+        }
+
+        //stock across every sellable batch with this name
+        private int available(String name) {
+            int total = 0;
+            for (Medicine med : medicines) {
+                if (med.name.equals(name)) total += med.quantity;
             }
+            return total;
+        }
+
+        //the batch that will be sold first, whose price the till shows
+        private Medicine firstToExpire(String name) {
+            Medicine first = null;
+            for (Medicine med : medicines) {
+                if (!med.name.equals(name)) continue;
+                if (first == null || med.expiryDate.compareTo(first.expiryDate) < 0
+                        || med.expiryDate.equals(first.expiryDate) && med.id < first.id) {
+                    first = med;
+                }
+            }
+            return first;
+        }
+
+        private Medicine selectedMedicine() {
+            int index = medicineCombo.getSelectedIndex();
+            if (index < 0 || index >= medicineNames.size()) return null;
+            return firstToExpire(medicineNames.get(index));
         }
 
         private void updatePriceLabel() {
-            if (medicineCombo.getSelectedIndex() >= 0 && !medicines.isEmpty()) {
-                Medicine selected = medicines.get(medicineCombo.getSelectedIndex());
-                priceLabel.setText(String.format("K%.2f", selected.price));
+            Medicine selected = selectedMedicine();
+            if (selected != null) {
+                priceLabel.setText("K" + Money.format(selected.priceNgwee));
                 calculateTotal();
             }
         }
 
         private void calculateTotal() {
             try {
-                if (medicineCombo.getSelectedIndex() >= 0 && !medicines.isEmpty()) {
+                Medicine selected = selectedMedicine();
+                if (selected != null) {
                     int quantity = Integer.parseInt(quantityField.getText().trim());
-                    Medicine selected = medicines.get(medicineCombo.getSelectedIndex());
-                    double total = quantity * selected.price;
-                    totalLabel.setText(String.format("K%.2f",  total));
+                    long total = quantity * selected.priceNgwee;
+                    totalLabel.setText("K" + Money.format(total));
                 }
             } catch (NumberFormatException e) {
                 totalLabel.setText("K0.00");
             }
         }
 
-        private void completeSale() {
+        private void addToBasket() {
             try {
-                if (medicineCombo.getSelectedIndex() < 0) {
+                Medicine selected = selectedMedicine();
+                if (selected == null) {
                     JOptionPane.showMessageDialog(this, "Please select a medicine!");
                     return;
                 }
 
                 int quantity = Integer.parseInt(quantityField.getText().trim());
-                if (quantity <= 0) {
-                    JOptionPane.showMessageDialog(this, "Please enter a valid quantity!");
+                //the ledger counts what other tills are holding, not just what the last refresh showed
+                if (!held.reserve(selected.name, quantity)) {
+                    JOptionPane.showMessageDialog(this,
+                            "Insufficient stock! Available: " + stockLedger.available(selected.name));
                     return;
                 }
+                basket.add(selected, quantity);
+
+                quantityField.setText("");
+                totalLabel.setText("K0.00");
+                refreshBasket();
+
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(this, "Please enter a valid quantity!");
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(this, e.getMessage());
+            }
+        }
+
+        void discardBasket() {
+            held.releaseAll();
+            basket.clear();
+            refreshBasket();
+        }
+
+        private void refreshBasket() {
+            basketTableModel.setRowCount(0);
+            for (Basket.Line line : basket.lines()) {
+                basketTableModel.addRow(new Object[]{
+                        line.medicine.name,
+                        line.quantity,
+                        "K" + Money.format(line.medicine.priceNgwee),
+                        "K" + Money.format(line.total())
+                });
+            }
+            basketTotalLabel.setText("Basket Total: K" + Money.format(basket.total()));
+        }
 
-                Medicine selected = medicines.get(medicineCombo.getSelectedIndex());
+        //all lines go in one transaction, so a basket is either fully sold or not at all
+        private void completeSale() {
+            if (basket.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "Basket is empty!");
+                return;
+            }
 
-                if (quantity > selected.quantity) {
-                    JOptionPane.showMessageDialog(this, "Insufficient stock! Available: " + selected.quantity);
+            Metrics.Action checkout = Metrics.startAction("checkout"); //till click to sale on disk
+            Basket order = basket;
+            StockLedger.Reservation orderStock = held;
+            List<Sale> sales = orderStock.sales(LocalDate.now().toString());
+            basket = new Basket(); //the till can start on the next customer straight away
+            held = stockLedger.newReservation();
+            refreshBasket();
+
+            //done once the journal has it on disk; the sales table catches up in the background
+            salesJournal.append(sales, orderStock).whenComplete((sequence, failure) -> SwingUtilities.invokeLater(() -> {
+                if (failure == null) {
+                    checkout.end();
+                    JOptionPane.showMessageDialog(this,
+                            "Sale completed!\nTotal: K" + Money.format(Sale.total(sales))); //what the batches actually cost
                     return;
                 }
+                if (basket.isEmpty()) {
+                    basket = order; //nothing was written, give the lines back
+                    held = orderStock;
+                    refreshBasket();
+                } else {
+                    orderStock.releaseAll();
+                }
+                checkout.failed();
+                JOptionPane.showMessageDialog(this, "Error completing sale: " + failure.getMessage());
+            }));
+        }
 
-                double totalAmount = quantity * selected.price;
-
-                // Record sale
-                PreparedStatement pstmt = connection.prepareStatement(
-                        "INSERT INTO sales (medicine_id, medicine_name, quantity, price_per_unit, total_amount, sale_date) " +
-                                "VALUES (?, ?, ?, ?, ?, ?)");
-                pstmt.setInt(1, selected.id);
-                pstmt.setString(2, selected.name);
-                pstmt.setInt(3, quantity);
-                pstmt.setDouble(4, selected.price);
-                pstmt.setDouble(5, totalAmount);
-                pstmt.setString(6, LocalDate.now().toString());
-                pstmt.executeUpdate();
-
-                // Update medicine quantity
-                pstmt = connection.prepareStatement("UPDATE medicines SET quantity = quantity - ? WHERE id = ?");
-                pstmt.setInt(1, quantity);
-                pstmt.setInt(2, selected.id);
-                pstmt.executeUpdate();
+        //keeps the sellable batches current and touches only the combo entries for their names
+        private void onMedicineChanged(Medicine med, boolean deleted) {
+            String selectedName = medicineCombo.getSelectedIndex() >= 0
+                    && medicineCombo.getSelectedIndex() < medicineNames.size()
+                    ? medicineNames.get(medicineCombo.getSelectedIndex()) : null;
+
+            String oldName = null;
+            for (int i = 0; i < medicines.size(); i++) {
+                if (medicines.get(i).id == med.id) {
+                    oldName = medicines.remove(i).name;
+                    break;
+                }
+            }
+            if (!deleted && med.quantity > 0 && med.expiryDate.compareTo(LocalDate.now().toString()) >= 0) {
+                int at = 0;
+                while (at < medicines.size() && medicines.get(at).name.compareTo(med.name) <= 0) at++;
+                medicines.add(at, med);
+            }
+            if (oldName != null && !oldName.equals(med.name)) {
+                refreshComboEntry(oldName);
+            }
+            refreshComboEntry(med.name);
 
-                quantityField.setText("");
-                totalLabel.setText("$0.00");
-                loadMedicines();
-                loadSalesHistory();
+            //keep the cashier's selection on the same medicine if it is still sellable
+            int selected = selectedName == null ? -1 : Collections.binarySearch(medicineNames, selectedName);
+            if (selected < 0) selected = Math.min(medicineCombo.getSelectedIndex(), medicineCombo.getItemCount() - 1);
+            if (selected >= 0) medicineCombo.setSelectedIndex(selected);
+            updatePriceLabel();
+        }
 
-                JOptionPane.showMessageDialog(this,
-                        String.format("Sale completed!\nTotal: K%.2f", totalAmount));
+        private void refreshComboEntry(String name) {
+            int index = Collections.binarySearch(medicineNames, name);
+            int stock = available(name);
+            if (index >= 0) {
+                medicineNames.remove(index);
+                medicineCombo.removeItemAt(index);
+            } else {
+                index = -index - 1;
+            }
+            if (stock > 0) {
+                medicineNames.add(index, name);
+                medicineCombo.insertItemAt(comboLabel(name), index);
+            }
+        }
 
-            } catch (NumberFormatException e) {
-                JOptionPane.showMessageDialog(this, "Please enter a valid quantity!");
-            } catch (SQLException e) {
-                JOptionPane.showMessageDialog(this, "Error completing sale: " + e.getMessage());
+        //new sales go on top of the history, the oldest fall off the bottom
+        private void onSaleRecorded(SaleRecorded event) {
+            for (Sale sale : event.sales) {
+                salesTableModel.insertRow(0, new Object[]{
+                        sale.id,
+                        sale.medicineName,
+                        sale.quantity,
+                        "K" + Money.format(sale.unitPriceNgwee),
+                        "K" + Money.format(sale.totalNgwee),
+                        sale.saleDate
+                });
+            }
+            while (salesTableModel.getRowCount() > SALES_HISTORY_ROWS) {
+                salesTableModel.removeRow(salesTableModel.getRowCount() - 1);
             }
         }
 
         private void loadSalesHistory() {
-            try {
-                Statement stmt = connection.createStatement();
-                ResultSet rs = stmt.executeQuery("SELECT * FROM sales ORDER BY sale_date DESC, id DESC LIMIT 100");
-
+            historyRequest.read(db -> db.sales.findRecent(SALES_HISTORY_ROWS), sales -> {
                 salesTableModel.setRowCount(0);
-                while (rs.next()) {
+                for (Sale sale : sales) {
                     Object[] row = {
-                            rs.getInt("id"),
-                            rs.getString("medicine_name"),
-                            rs.getInt("quantity"),
-                            String.format("K%.2f", rs.getDouble("price_per_unit")),
-                            String.format("K%.2f", rs.getDouble("total_amount")),
-                            rs.getString("sale_date")
+                            sale.id,
+                            sale.medicineName,
+                            sale.quantity,
+                            "K" + Money.format(sale.unitPriceNgwee),
+                            "K" + Money.format(sale.totalNgwee),
+                            sale.saleDate
                     };
                     salesTableModel.addRow(row);
                 }
-            } catch (SQLException e) {
-                JOptionPane.showMessageDialog(this, "Error loading sales history: " + e.getMessage());
-            }
+            }, e -> JOptionPane.showMessageDialog(this, "Error loading sales history: " + e.getMessage()));
         }
     }
 
     // Reports panel class by extending JPanel
     class ReportsPanel extends JPanel {
         private JTextArea reportArea;
-
-        public ReportsPanel() {
+        private JCheckBox itemizeSalesBox;
+        private javax.swing.border.TitledBorder outputBorder;
+        private static final String OUTPUT_TITLE = "Report Output";
+        private final DataAccessExecutor.Slot reportRequest = dataAccess.newSlot(); //clicking another report drops the old one
+        private Report currentReport; //what Export writes out, null until a report has been run
+        private final ReportCache reportCache = new ReportCache(dataAccess::dataVersion);
+
+        public ReportsPanel(EventBus.Subscriptions subscriptions) {
             setLayout(new BorderLayout());
 
             JPanel buttonPanel = new JPanel(new FlowLayout());
@@ -770,6 +1040,10 @@ public class PharmacyManagementSystem {
             monthlyReportButton.addActionListener(e -> generateMonthlyReport());
             buttonPanel.add(monthlyReportButton);
 
+            itemizeSalesBox = new JCheckBox("Itemize sales");
+            itemizeSalesBox.setToolTipText("List every sale instead of daily totals per medicine");
+            buttonPanel.add(itemizeSalesBox);
+
             JButton inventoryReportButton = new JButton("Inventory Report");
             inventoryReportButton.addActionListener(e -> generateInventoryReport());
             buttonPanel.add(            inventoryReportButton);
@@ -778,13 +1052,18 @@ public class PharmacyManagementSystem {
             expiredReportButton.addActionListener(e -> generateExpiredMedicinesReport());
             buttonPanel.add(expiredReportButton);
 
+            JButton analyticsButton = new JButton("Sales Analytics");
+            analyticsButton.addActionListener(e -> generateAnalyticsReport());
+            buttonPanel.add(analyticsButton);
+
             add(buttonPanel, BorderLayout.NORTH);
 
             reportArea = new JTextArea();
             reportArea.setEditable(false);
             reportArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
             JScrollPane scrollPane = new JScrollPane(reportArea);
-            scrollPane.setBorder(BorderFactory.createTitledBorder("Report Output"));
+            outputBorder = BorderFactory.createTitledBorder(OUTPUT_TITLE);
+            scrollPane.setBorder(outputBorder);
             add(scrollPane, BorderLayout.CENTER);
 
             JPanel exportPanel = new JPanel(new FlowLayout());
@@ -793,221 +1072,173 @@ public class PharmacyManagementSystem {
             exportPanel.add(exportButton);
 
             JButton clearButton = new JButton("Clear Report");
-            clearButton.addActionListener(e -> reportArea.setText(""));
+            clearButton.addActionListener(e -> {
+                reportArea.setText("");
+                currentReport = null;
+            });
             exportPanel.add(clearButton);
 
             add(exportPanel, BorderLayout.SOUTH);
-        }
 
-        private void generateDailyReport() {
-            try {
-                String today = LocalDate.now().toString();
-                PreparedStatement pstmt = connection.prepareStatement(
-                        "SELECT * FROM sales WHERE sale_date = ? ORDER BY id");
-                pstmt.setString(1, today);
+            //reports are not re-run behind the user's back, just flagged as behind the data
+            subscriptions
+                    .on(MedicineChanged.class, e -> markOutOfDate())
+                    .on(StockAdjusted.class, e -> markOutOfDate())
+                    .on(SaleRecorded.class, e -> markOutOfDate());
+        }
 
-                ResultSet rs = pstmt.executeQuery();
-                generateSalesReport(rs, "Daily Sales Report - " + today);
+        //a report can be run twice: once for the on-screen preview, again when it is exported
+        @FunctionalInterface
+        private interface Report {
+            String run(DataSession db, ReportWriter.Format format, java.io.Writer out) throws Exception;
+        }
 
-            } catch (SQLException e) {
-                JOptionPane.showMessageDialog(this, "Error generating daily report: " + e.getMessage());
+        //report preview is built on a reader thread, only setText happens on the EDT
+        //previews are cached per key until the next write, so a repeat click costs nothing
+        private void runReport(String errorMessage, String key, Report report) {
+            currentReport = report;
+            Metrics.Action run = Metrics.startAction("report." + key.split("\\|")[0]); //timed per kind, not per date
+            String cached = reportCache.get(key);
+            if (cached != null) {
+                reportRequest.cancel();
+                showReport(cached);
+                run.end();
+                return;
             }
+
+            long version = reportCache.version(); //taken before the read starts, so a racing write makes it stale
+            reportRequest.read(db -> report.run(db, ReportWriter.Format.TEXT, null), text -> {
+                reportCache.put(key, version, text);
+                showReport(text);
+                run.end();
+            }, e -> {
+                run.failed();
+                JOptionPane.showMessageDialog(this, errorMessage + e.getMessage());
+            });
         }
 
-        private void generateWeeklyReport() {
-            try {
-                LocalDate endDate = LocalDate.now();
-                LocalDate startDate = endDate.minusDays(7);
+        private void showReport(String text) {
+            reportArea.setText(text);
+            outputBorder.setTitle(OUTPUT_TITLE);
+            repaint();
+        }
 
-                PreparedStatement pstmt = connection.prepareStatement(
-                        "SELECT * FROM sales WHERE sale_date BETWEEN ? AND ? ORDER BY sale_date, id");
-                pstmt.setString(1, startDate.toString());
-                pstmt.setString(2, endDate.toString());
+        private void markOutOfDate() {
+            if (reportArea.getText().isEmpty()) return;
+            outputBorder.setTitle(OUTPUT_TITLE + " (data has changed, run the report again to update)");
+            repaint();
+        }
 
-                ResultSet rs = pstmt.executeQuery();
-                generateSalesReport(rs, "Weekly Sales Report - " + startDate + " to " + endDate);
+        private void generateDailyReport() {
+            String today = LocalDate.now().toString();
+            runReport("Error generating daily report: ", "daily|" + today,
+                    (db, format, out) -> Reports.daily(db, LocalDate.parse(today), format, out));
+        }
 
-            } catch (SQLException e) {
-                JOptionPane.showMessageDialog(this, "Error generating weekly report: " + e.getMessage());
-            }
+        private void generateWeeklyReport() {
+            LocalDate endDate = LocalDate.now();
+            generatePeriodReport("Weekly Sales Report", "Error generating weekly report: ", endDate.minusDays(7), endDate);
         }
 
         private void generateMonthlyReport() {
-            try {
-                LocalDate endDate = LocalDate.now();
-                LocalDate startDate = endDate.minusDays(30);
-
-                PreparedStatement pstmt = connection.prepareStatement(
-                        "SELECT * FROM sales WHERE sale_date BETWEEN ? AND ? ORDER BY sale_date, id");
-                pstmt.setString(1, startDate.toString());
-                pstmt.setString(2, endDate.toString());
-
-                ResultSet rs = pstmt.executeQuery();
-                generateSalesReport(rs, "Monthly sales report - " + startDate + " to " + endDate);
-
-            } catch (SQLException e) {
-                JOptionPane.showMessageDialog(this, "Error generating monthly report: " + e.getMessage());
-            }
+            LocalDate endDate = LocalDate.now();
+            generatePeriodReport("Monthly sales report", "Error generating monthly report: ", endDate.minusDays(30), endDate);
         }
 
-        private void generateSalesReport(ResultSet rs, String title) throws SQLException {
-            StringBuilder report = new StringBuilder();
-            report.append(title).append("\n");
-            report.append("=".repeat(80)).append("\n\n");
-
-            double totalRevenue = 0;
-            int totalItems = 0;
-
-            report.append(String.format("%-20s %-10s %-12s %-12s %-12s\n",
-                    "Medicine", "Quantity", "Price/Unit", "Total", "Date"));
-            report.append("-".repeat(80)).append("\n");
-
-            while (rs.next()) {
-                String medicine = rs.getString("medicine_name");
-                int quantity = rs.getInt("quantity");
-                double price = rs.getDouble("price_per_unit");
-                double total = rs.getDouble("total_amount");
-                String date = rs.getString("sale_date");
-
-                report.append(String.format("%-20s %-10d $%-11.2f $%-11.2f %-12s\n",
-                        medicine, quantity, price, total, date));
-
-                totalRevenue += total;
-                totalItems += quantity;
-            }
-
-            report.append("\n").append("=".repeat(80)).append("\n");
-            report.append(String.format("Total Items Sold: %d\n", totalItems));
-            report.append(String.format("Total Revenue: K%.2f\n", totalRevenue));
-            report.append("=".repeat(80));
-
-            reportArea.setText(report.toString());
+        //summaries come from the daily rollup, raw sales rows only when itemized
+        private void generatePeriodReport(String title, String errorMessage, LocalDate startDate, LocalDate endDate) {
+            String heading = title + " - " + startDate + " to " + endDate;
+            boolean itemize = itemizeSalesBox.isSelected();
+            runReport(errorMessage, (itemize ? "sales|" : "rollup|") + heading,
+                    (db, format, out) -> Reports.period(db, heading, startDate, endDate, itemize, format, out));
         }
 
         private void generateInventoryReport() {
-            try {
-                Statement stmt = connection.createStatement();
-                ResultSet rs = stmt.executeQuery("SELECT * FROM medicines ORDER BY name");
-
-                StringBuilder report = new StringBuilder();
-                report.append("Inventory Report\n");
-                report.append("=".repeat(80)).append("\n\n");
-
-                report.append(String.format("%-20s %-15s %-15s %-10s %-10s\n",
-                        "Medicine", "Batch Number", "Expiry Date", "Quantity", "Price"));
-                report.append("-".repeat(80)).append("\n");
-
-                int totalItems = 0;
-                double totalValue = 0;
-
-                while (rs.next()) {
-                    String name = rs.getString("name");
-                    String batch = rs.getString("batch_number");
-                    String expiry = rs.getString("expiry_date");
-                    int quantity = rs.getInt("quantity");
-                    double price = rs.getDouble("price");
-
-                    report.append(String.format("%-20s %-15s %-15s %-10d K%-9.2f\n",
-                            name, batch, expiry, quantity, price));
-
-                    totalItems += quantity;
-                    totalValue += quantity * price;
-                }
-
-                report.append("\n").append("=".repeat(80)).append("\n");
-                report.append(String.format("Total Items in Stock: %d\n", totalItems));
-                report.append(String.format("Total Inventory Value: K%.2f\n", totalValue));
-                report.append("=".repeat(80));
-
-                reportArea.setText(report.toString());
-
-            } catch (SQLException e) {
-                JOptionPane.showMessageDialog(this, "Error generating inventory report: " + e.getMessage());
-            }
+            runReport("Error generating inventory report: ", "inventory", Reports::inventory);
         }
 
         private void generateExpiredMedicinesReport() {
-            try {
-                String today = LocalDate.now().toString();
-                PreparedStatement pstmt = connection.prepareStatement(
-                        "SELECT * FROM medicines WHERE expiry_date < ? ORDER BY expiry_date");
-                pstmt.setString(1, today);
-
-                ResultSet rs = pstmt.executeQuery();
-
-                StringBuilder report = new StringBuilder();
-                report.append("Expired Medicines Report\n");
-                report.append("=".repeat(80)).append("\n\n");
-
-                report.append(String.format("%-20s %-15s %-15s %-10s %-10s\n",
-                        "Medicine", "Batch Number", "Expiry Date", "Quantity", "Price"));
-                report.append("-".repeat(80)).append("\n");
-
-                int expiredItems = 0;
-                double expiredValue = 0;
-                boolean hasExpired = false;
-
-                while (rs.next()) {
-                    hasExpired = true;
-                    String name = rs.getString("name");
-                    String batch = rs.getString("batch_number");
-                    String expiry = rs.getString("expiry_date");
-                    int quantity = rs.getInt("quantity");
-                    double price = rs.getDouble("price");
-
-                    report.append(String.format("%-20s %-15s %-15s %-10d K%-9.2f\n",
-                            name, batch, expiry, quantity, price));
-
-                    expiredItems += quantity;
-                    expiredValue += quantity * price;
-                }
-
-                if (!hasExpired) {
-                    report.append("Expired Medicines Not Found!.\n");
-                } else {
-                    report.append("\n").append("=".repeat(80)).append("\n");
-                    report.append(String.format("Total Expired Items: %d\n", expiredItems));
-                    report.append(String.format("Total Value of Expired Stock: K%.2f\n", expiredValue));
-                }
-
-                report.append("=".repeat(80));
-                reportArea.setText(report.toString());
+            String today = LocalDate.now().toString();
+            runReport("Error generating expired medicines report: ", "expired|" + today,
+                    (db, format, out) -> Reports.expired(db, LocalDate.parse(today), format, out));
+        }
 
-            } catch (SQLException e) {
-                JOptionPane.showMessageDialog(this, "Error generating expired medicines report: " + e.getMessage());
+        //ad-hoc ranges over any number of years, aggregated from the in-memory columns not the database
+        private void generateAnalyticsReport() {
+            JComboBox<SalesAnalytics.GroupBy> groupByBox = new JComboBox<>(SalesAnalytics.GroupBy.values());
+            JTextField startField = new JTextField(LocalDate.now().minusYears(1).toString(), 10);
+            JTextField endField = new JTextField(LocalDate.now().toString(), 10);
+            JPanel form = new JPanel(new GridLayout(3, 2, 5, 5));
+            form.add(new JLabel("Group by:"));
+            form.add(groupByBox);
+            form.add(new JLabel("From (YYYY-MM-DD):"));
+            form.add(startField);
+            form.add(new JLabel("To (YYYY-MM-DD):"));
+            form.add(endField);
+            if (JOptionPane.showConfirmDialog(this, form, "Sales Analytics",
+                    JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) return;
+
+            LocalDate startDate;
+            LocalDate endDate;
+            try {
+                startDate = LocalDate.parse(startField.getText().trim());
+                endDate = LocalDate.parse(endField.getText().trim());
+            } catch (java.time.format.DateTimeParseException e) {
+                JOptionPane.showMessageDialog(this, "Please enter dates as YYYY-MM-DD");
+                return;
             }
+            SalesAnalytics.GroupBy groupBy = (SalesAnalytics.GroupBy) groupByBox.getSelectedItem();
+
+            runReport("Error generating sales analytics: ",
+                    "analytics|" + groupBy + "|" + startDate + "|" + endDate,
+                    (db, format, out) -> Reports.analytics(db, analytics, groupBy, startDate, endDate, format, out));
         }
 
+        //re-runs the query and streams every row to the file, the text area only ever holds the preview
         private void exportReport() {
-            if (reportArea.getText().isEmpty()) {
+            Report report = currentReport;
+            if (report == null) {
                 JOptionPane.showMessageDialog(this, "No report to export!");
                 return;
             }
 
             JFileChooser fileChooser = new JFileChooser();
             fileChooser.setDialogTitle("Export Report");
-            fileChooser.setSelectedFile(new java.io.File("pharmacy_report.txt"));
+            fileChooser.setAcceptAllFileFilterUsed(false);
+            for (ReportWriter.Format format : ReportWriter.Format.values()) {
+                fileChooser.addChoosableFileFilter(new javax.swing.filechooser.FileNameExtensionFilter(
+                        format.description + " (*." + format.extension + ")", format.extension));
+            }
+            fileChooser.setFileFilter(fileChooser.getChoosableFileFilters()[0]);
+            fileChooser.setSelectedFile(new java.io.File("pharmacy_report"));
 
             int userSelection = fileChooser.showSaveDialog(this);
-            if (userSelection == JFileChooser.APPROVE_OPTION) {
-                try {
-                    java.io.File file = fileChooser.getSelectedFile();
-                    java.io.FileWriter writer = new java.io.FileWriter(file);
-                    writer.write(reportArea.getText());
-                    writer.close();
-                    JOptionPane.showMessageDialog(this, "Report exported successfully to: " + file.getName());
-                } catch (Exception e) {
-                    JOptionPane.showMessageDialog(this, "Error exporting report: " + e.getMessage());
-                }
+            if (userSelection != JFileChooser.APPROVE_OPTION) return;
+
+            String description = fileChooser.getFileFilter().getDescription();
+            ReportWriter.Format format = ReportWriter.Format.TEXT;
+            for (ReportWriter.Format candidate : ReportWriter.Format.values()) {
+                if (description.startsWith(candidate.description)) format = candidate;
             }
+            java.io.File chosen = fileChooser.getSelectedFile();
+            java.io.File file = chosen.getName().contains(".") ? chosen
+                    : new java.io.File(chosen.getPath() + "." + format.extension);
+
+            ReportWriter.Format exportFormat = format;
+            Metrics.Action export = Metrics.startAction("report.export");
+            dataAccess.read(db -> {
+                try (java.io.Writer out = ReportWriter.open(file.toPath())) {
+                    return report.run(db, exportFormat, out);
+                } catch (java.io.UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }, preview -> {
+                export.end();
+                JOptionPane.showMessageDialog(this, "Report exported successfully to: " + file.getName());
+            }, e -> {
+                export.failed();
+                JOptionPane.showMessageDialog(this, "Error exporting report: " + e.getMessage());
+            });
         }
     }
-
-    // Helper class for medicine data and allat shit
-    class Medicine {
-        int id;
-        String name;
-        int quantity;
-        double price;
-    }
 }
@@ -0,0 +1,552 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Headless mode, started with {@code --server}: the same database,
+ * repositories and reports as the dashboard, served as JSON over the JDK's
+ * built-in HTTP server so several tills or a web front end can share one
+ * store. No Swing class is loaded.
+ *
+ * <pre>
+ * GET    /api/medicines?q=term            ranked search
+ * GET    /api/medicines?afterName=&amp;afterId=&amp;limit=   one page in (name, id) order
+ * GET    /api/medicines/{id}
+ * POST   /api/medicines                   {"name", "batchNumber", "expiryDate", "quantity", "price", "reorderLevel"}
+ * PUT    /api/medicines/{id}              same fields
+ * DELETE /api/medicines/{id}
+ * POST   /api/checkout                    {"lines": [{"medicineId", "quantity"}]}, answered once journaled
+ * GET    /api/low-stock
+ * GET    /api/reports/{daily|weekly|monthly|inventory|expired|analytics}?format=jsonl|csv|txt
+ * </pre>
+ *
+ * <p>Every request runs on its own virtual thread where the JDK has them,
+ * otherwise on a fixed pool, and simply blocks on the
+ * {@link DataAccessExecutor} futures. Writes publish the same events as the
+ * dashboard, delivered on one background thread instead of the EDT.
+ *
+ * <p>A checkout reserves its stock in the {@link StockLedger} and is
+ * answered as soon as the {@link SalesJournal} has it on disk, with the
+ * journal sequence in place of sale ids; the sales rows follow moments
+ * later.
+ */
+final class PharmacyServer implements AutoCloseable {
+    static final int DEFAULT_PORT = Integer.getInteger("pharmacy.server.port", 8080);
+    private static final int DEFAULT_PAGE = 100;
+    private static final int MAX_PAGE = 1000;
+    private static final int MAX_BODY = 1 << 20;
+
+    /** A request that cannot be served, answered with {@code status} and a JSON error. */
+    private static final class ApiException extends RuntimeException {
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private final DataAccessExecutor dataAccess;
+    private final ExecutorService eventThread = Executors.newSingleThreadExecutor(
+            DataAccessExecutor.daemonThreads("pharmacy-events"));
+    private final EventBus events = new EventBus(eventThread);
+    private final SalesAnalytics analytics = new SalesAnalytics();
+    private final StockWatcher stockWatcher;
+    private final StockLedger stockLedger;
+    private final SalesJournal salesJournal;
+    private final ExpiryScheduler expiryScheduler;
+    private final ExecutorService requests = requestExecutor();
+    private HttpServer http;
+
+    PharmacyServer(String dbUrl) {
+        this.dataAccess = new DataAccessExecutor(dbUrl);
+        this.stockWatcher = new StockWatcher(dataAccess, events);
+        this.stockLedger = new StockLedger(dataAccess, events);
+        this.salesJournal = new SalesJournal(SalesJournal.pathFor(dbUrl), dataAccess, events, analytics);
+        this.expiryScheduler = new ExpiryScheduler(dataAccess, events);
+    }
+
+    /** Entry point for {@code --server}; {@code --port=N} overrides the port. */
+    static void run(String dbUrl, String[] args) throws Exception {
+        int port = DEFAULT_PORT;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) port = Integer.parseInt(arg.substring("--port=".length()));
+        }
+        Metrics.register();
+        PharmacyServer server = new PharmacyServer(dbUrl);
+        server.start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close, "pharmacy-shutdown"));
+        long readyMillis = StartupTimer.uptime();
+        Metrics.recordAction("startup", readyMillis * 1_000_000L);
+        System.out.println("Pharmacy API listening on http://localhost:" + server.port() + "/api/ (ready in " + readyMillis + " ms)");
+    }
+
+    /** Brings the schema up to date, then starts listening. Port 0 picks a free one. */
+    void start(int port) throws Exception {
+        DataAccessExecutor.await(dataAccess.write(db -> {
+            PharmacyManagementSystem.initializeDatabase(db);
+            salesJournal.recover(db);
+            return null;
+        }));
+        salesJournal.start();
+        expiryScheduler.start();
+        stockWatcher.start();
+        stockLedger.start();
+        dataAccess.warmUp();
+        dataAccess.read(db -> {
+            analytics.catchUp(db);
+            return null;
+        });
+
+        // responses go out as headers then body; without TCP_NODELAY each waits on a delayed ACK (~40 ms)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        http = HttpServer.create(new InetSocketAddress(port), 1024);
+        http.createContext("/api/", this::handle);
+        http.setExecutor(requests);
+        http.start();
+    }
+
+    int port() {
+        return http.getAddress().getPort();
+    }
+
+    // one virtual thread per request on JDK 21+; looked up reflectively so the code still builds on 17
+    private static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int threads = Math.max(32, Runtime.getRuntime().availableProcessors() * 8);
+            return Executors.newFixedThreadPool(threads, DataAccessExecutor.daemonThreads("pharmacy-http"));
+        }
+    }
+
+    private void handle(HttpExchange exchange) {
+        Metrics.Action action = Metrics.startAction(actionName(exchange));
+        try {
+            route(exchange);
+            action.end();
+        } catch (ApiException e) {
+            sendError(exchange, e.status, e.getMessage());
+            action.failed();
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            sendError(exchange, 400, e.getMessage());
+            action.failed();
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendError(exchange, 500, String.valueOf(e.getMessage()));
+            action.failed();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // e.g. "api.GET medicines"; only known routes get their own timer, so odd URLs can't grow the set
+    private static String actionName(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath().substring("/api/".length());
+        int slash = path.indexOf('/');
+        String resource = slash < 0 ? path : path.substring(0, slash);
+        if (!exchange.getRequestMethod().matches("GET|POST|PUT|DELETE")) return "api.other";
+        switch (resource) {
+            case "medicines":
+            case "checkout":
+            case "low-stock":
+            case "reports":
+                return "api." + exchange.getRequestMethod() + " " + resource;
+            default:
+                return "api.other";
+        }
+    }
+
+    private void route(HttpExchange exchange) throws Exception {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().substring("/api/".length()).split("/");
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        switch (path[0]) {
+            case "medicines":
+                if (path.length == 1) {
+                    if (method.equals("GET")) listMedicines(exchange, query);
+                    else if (method.equals("POST")) addMedicine(exchange);
+                    else throw notAllowed(method);
+                } else if (path.length == 2) {
+                    int id = parseInt(path[1], "medicine id");
+                    if (method.equals("GET")) getMedicine(exchange, id);
+                    else if (method.equals("PUT")) updateMedicine(exchange, id);
+                    else if (method.equals("DELETE")) deleteMedicine(exchange, id);
+                    else throw notAllowed(method);
+                } else {
+                    throw notFound();
+                }
+                break;
+            case "checkout":
+                if (path.length != 1) throw notFound();
+                if (!method.equals("POST")) throw notAllowed(method);
+                checkout(exchange);
+                break;
+            case "low-stock":
+                if (path.length != 1) throw notFound();
+                if (!method.equals("GET")) throw notAllowed(method);
+                lowStock(exchange);
+                break;
+            case "reports":
+                if (path.length != 2) throw notFound();
+                if (!method.equals("GET")) throw notAllowed(method);
+                report(exchange, path[1], query);
+                break;
+            default:
+                throw notFound();
+        }
+    }
+
+    private void listMedicines(HttpExchange exchange, Map<String, String> query) throws Exception {
+        int limit = Math.min(MAX_PAGE, query.containsKey("limit") ? parseInt(query.get("limit"), "limit") : DEFAULT_PAGE);
+        String term = query.get("q");
+        String afterName = query.get("afterName");
+        int afterId = query.containsKey("afterId") ? parseInt(query.get("afterId"), "afterId") : 0;
+
+        List<Medicine> rows = DataAccessExecutor.await(dataAccess.read(db -> term != null && !term.trim().isEmpty()
+                ? db.medicines.search(term.trim(), limit)
+                : db.medicines.findPage(afterName, afterId, limit, 0)));
+
+        StringBuilder json = new StringBuilder(64 + rows.size() * 128).append("{\"medicines\":[");
+        for (int i = 0; i < rows.size(); i++) {
+            if (i > 0) json.append(',');
+            appendMedicine(json, rows.get(i));
+        }
+        sendJson(exchange, 200, json.append("]}"));
+    }
+
+    private void getMedicine(HttpExchange exchange, int id) throws Exception {
+        Medicine med = DataAccessExecutor.await(dataAccess.read(db -> db.medicines.findById(id)));
+        if (med == null) throw notFound();
+        StringBuilder json = new StringBuilder(128);
+        appendMedicine(json, med);
+        sendJson(exchange, 200, json);
+    }
+
+    private void addMedicine(HttpExchange exchange) throws Exception {
+        Medicine med = readMedicine(exchange);
+        MedicineDelta delta = DataAccessExecutor.await(dataAccess.write(db -> MedicineDelta.insert(db, med)));
+        events.publish(new MedicineChanged(delta));
+        StringBuilder json = new StringBuilder(128);
+        appendMedicine(json, delta.medicine);
+        sendJson(exchange, 201, json);
+    }
+
+    private void updateMedicine(HttpExchange exchange, int id) throws Exception {
+        Medicine med = readMedicine(exchange);
+        med.id = id;
+        MedicineDelta delta = DataAccessExecutor.await(dataAccess.write(db ->
+                db.medicines.findById(id) == null ? null : MedicineDelta.update(db, med)));
+        if (delta == null) throw notFound();
+        events.publish(new MedicineChanged(delta));
+        StringBuilder json = new StringBuilder(128);
+        appendMedicine(json, delta.medicine);
+        sendJson(exchange, 200, json);
+    }
+
+    private void deleteMedicine(HttpExchange exchange, int id) throws Exception {
+        MedicineDelta delta = DataAccessExecutor.await(dataAccess.write(db ->
+                db.medicines.findById(id) == null ? null : MedicineDelta.delete(db, id)));
+        if (delta == null) throw notFound();
+        events.publish(new MedicineChanged(delta));
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    // lines name a batch; like the till, the sale itself is first-expiry-first-out across that medicine's batches
+    private void checkout(HttpExchange exchange) throws Exception {
+        Map<String, Object> body = asObject(readBody(exchange), "request body");
+        Object linesField = body.get("lines");
+        if (!(linesField instanceof List) || ((List<?>) linesField).isEmpty()) {
+            throw new IllegalArgumentException("lines must be a non-empty array");
+        }
+        List<int[]> wanted = new ArrayList<>();
+        for (Object line : (List<?>) linesField) {
+            Map<String, Object> fields = asObject(line, "line");
+            int quantity = intField(fields, "quantity");
+            if (quantity <= 0) throw new IllegalArgumentException("quantity must be positive");
+            wanted.add(new int[]{intField(fields, "medicineId"), quantity});
+        }
+
+        List<Medicine> meds = DataAccessExecutor.await(dataAccess.read(db -> {
+            List<Medicine> rows = new ArrayList<>();
+            for (int[] line : wanted) {
+                Medicine med = db.medicines.findById(line[0]);
+                if (med == null) throw new ApiException(404, "No medicine with id " + line[0]);
+                rows.add(med);
+            }
+            return rows;
+        }));
+
+        // stock is held in memory first, so a short line is refused without touching the database
+        StockLedger.Reservation held = stockLedger.newReservation();
+        try {
+            for (int i = 0; i < wanted.size(); i++) {
+                Medicine med = meds.get(i);
+                if (!held.reserve(med.name, wanted.get(i)[1])) {
+                    throw new ApiException(409, "Insufficient stock for " + med.name);
+                }
+            }
+        } catch (Exception e) {
+            held.releaseAll(); // nothing is held for a refused basket
+            throw e;
+        }
+
+        List<Sale> sales = held.sales(LocalDate.now().toString());
+        long sequence;
+        try {
+            sequence = DataAccessExecutor.await(salesJournal.append(sales, held));
+        } catch (Exception e) {
+            held.releaseAll();
+            throw e;
+        }
+
+        StringBuilder json = new StringBuilder(256).append("{\"sequence\":").append(sequence).append(",\"sales\":[");
+        for (int i = 0; i < sales.size(); i++) {
+            Sale s = sales.get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"medicineId\":").append(s.medicineId)
+                    .append(",\"medicineName\":");
+            Json.appendString(json, s.medicineName);
+            json.append(",\"quantity\":").append(s.quantity)
+                    .append(",\"pricePerUnit\":");
+            Money.append(json, s.unitPriceNgwee).append(",\"totalAmount\":");
+            Money.append(json, s.totalNgwee).append(",\"saleDate\":");
+            Json.appendString(json, s.saleDate);
+            json.append('}');
+        }
+        json.append("],\"total\":");
+        sendJson(exchange, 201, Money.append(json, Sale.total(sales)).append('}'));
+    }
+
+    private void lowStock(HttpExchange exchange) throws IOException {
+        List<LowStockAlert> rows = stockWatcher.lowStock();
+        StringBuilder json = new StringBuilder(64 + rows.size() * 96).append("{\"lowStock\":[");
+        for (int i = 0; i < rows.size(); i++) {
+            LowStockAlert row = rows.get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"medicineId\":").append(row.medicineId).append(",\"name\":");
+            Json.appendString(json, row.name);
+            json.append(",\"batchNumber\":");
+            Json.appendString(json, row.batchNumber);
+            json.append(",\"quantity\":").append(row.quantity)
+                    .append(",\"reorderLevel\":").append(row.reorderLevel).append('}');
+        }
+        sendJson(exchange, 200, json.append("]}"));
+    }
+
+    // rows are streamed from the reader thread straight into the response, so any size of report is fine
+    private void report(HttpExchange exchange, String name, Map<String, String> query) throws Exception {
+        ReportWriter.Format format = ReportWriter.Format.JSONL;
+        if (query.containsKey("format")) {
+            format = null;
+            for (ReportWriter.Format candidate : ReportWriter.Format.values()) {
+                if (candidate.extension.equalsIgnoreCase(query.get("format"))) format = candidate;
+            }
+            if (format == null) throw new IllegalArgumentException("format must be jsonl, csv or txt");
+        }
+
+        LocalDate today = LocalDate.now();
+        boolean itemize = Boolean.parseBoolean(query.get("itemize"));
+        DataAccessExecutor.DbCall<String> run;
+        switch (name) {
+            case "daily": {
+                LocalDate day = query.containsKey("date") ? LocalDate.parse(query.get("date")) : today;
+                ReportWriter.Format f = format;
+                run = db -> Reports.daily(db, day, f, open(exchange, f));
+                break;
+            }
+            case "weekly":
+            case "monthly": {
+                LocalDate start = today.minusDays(name.equals("weekly") ? 7 : 30);
+                String heading = (name.equals("weekly") ? "Weekly Sales Report" : "Monthly sales report")
+                        + " - " + start + " to " + today;
+                ReportWriter.Format f = format;
+                run = db -> Reports.period(db, heading, start, today, itemize, f, open(exchange, f));
+                break;
+            }
+            case "inventory": {
+                ReportWriter.Format f = format;
+                run = db -> Reports.inventory(db, f, open(exchange, f));
+                break;
+            }
+            case "expired": {
+                ReportWriter.Format f = format;
+                run = db -> Reports.expired(db, today, f, open(exchange, f));
+                break;
+            }
+            case "analytics": {
+                SalesAnalytics.GroupBy groupBy = SalesAnalytics.GroupBy.valueOf(
+                        query.getOrDefault("groupBy", "PRODUCT").toUpperCase(Locale.ROOT));
+                LocalDate start = query.containsKey("from") ? LocalDate.parse(query.get("from")) : today.minusYears(1);
+                LocalDate end = query.containsKey("to") ? LocalDate.parse(query.get("to")) : today;
+                ReportWriter.Format f = format;
+                run = db -> Reports.analytics(db, analytics, groupBy, start, end, f, open(exchange, f));
+                break;
+            }
+            default:
+                throw notFound();
+        }
+
+        try {
+            DataAccessExecutor.await(dataAccess.read(run));
+        } catch (UncheckedIOException e) {
+            // the client went away mid-report; the response is already committed, nothing left to send
+        }
+    }
+
+    // sends the headers and wraps the body, called on the reader thread once the report is about to write
+    private static Writer open(HttpExchange exchange, ReportWriter.Format format) throws IOException {
+        String type;
+        switch (format) {
+            case CSV: type = "text/csv"; break;
+            case JSONL: type = "application/x-ndjson"; break;
+            default: type = "text/plain";
+        }
+        exchange.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0); // chunked
+        return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private static Medicine readMedicine(HttpExchange exchange) throws IOException {
+        Map<String, Object> fields = asObject(readBody(exchange), "request body");
+        Medicine med = new Medicine();
+        med.name = stringField(fields, "name");
+        med.batchNumber = stringField(fields, "batchNumber");
+        med.expiryDate = LocalDate.parse(stringField(fields, "expiryDate")).toString();
+        med.quantity = intField(fields, "quantity");
+        med.priceNgwee = Money.of(numberField(fields, "price"));
+        if (fields.containsKey("reorderLevel")) med.reorderLevel = intField(fields, "reorderLevel");
+        if (med.quantity < 0 || med.priceNgwee < 0 || med.reorderLevel < 0) {
+            throw new IllegalArgumentException("quantity, price and reorderLevel must not be negative");
+        }
+        return med;
+    }
+
+    private static void appendMedicine(StringBuilder json, Medicine med) {
+        json.append("{\"id\":").append(med.id).append(",\"name\":");
+        Json.appendString(json, med.name);
+        json.append(",\"batchNumber\":");
+        Json.appendString(json, med.batchNumber);
+        json.append(",\"expiryDate\":");
+        Json.appendString(json, med.expiryDate);
+        json.append(",\"quantity\":").append(med.quantity).append(",\"price\":");
+        Money.append(json, med.priceNgwee).append(",\"reorderLevel\":").append(med.reorderLevel).append('}');
+    }
+
+    private static Object readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY + 1);
+            if (body.length > MAX_BODY) throw new ApiException(413, "Request body too large");
+            return Json.parse(new String(body, StandardCharsets.UTF_8));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asObject(Object value, String what) {
+        if (!(value instanceof Map)) throw new IllegalArgumentException(what + " must be a JSON object");
+        return (Map<String, Object>) value;
+    }
+
+    private static String stringField(Map<String, Object> fields, String name) {
+        Object value = fields.get(name);
+        if (!(value instanceof String) || ((String) value).trim().isEmpty()) {
+            throw new IllegalArgumentException(name + " is required");
+        }
+        return ((String) value).trim();
+    }
+
+    private static double numberField(Map<String, Object> fields, String name) {
+        Object value = fields.get(name);
+        if (!(value instanceof Double)) throw new IllegalArgumentException(name + " must be a number");
+        return (Double) value;
+    }
+
+    private static int intField(Map<String, Object> fields, String name) {
+        double value = numberField(fields, name);
+        if (value != Math.rint(value) || Math.abs(value) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(name + " must be a whole number");
+        }
+        return (int) value;
+    }
+
+    private static int parseInt(String value, String what) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(what + " must be a whole number");
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return query;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, CharSequence json) throws IOException {
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        if (exchange.getResponseCode() != -1) return; // headers already sent, e.g. a report failed halfway
+        StringBuilder json = new StringBuilder("{\"error\":");
+        Json.appendString(json, message == null ? "" : message);
+        try {
+            sendJson(exchange, status, json.append('}'));
+        } catch (IOException ignored) {
+            // the client is gone
+        }
+    }
+
+    private static ApiException notFound() {
+        return new ApiException(404, "Not found");
+    }
+
+    private static ApiException notAllowed(String method) {
+        return new ApiException(405, method + " is not allowed here");
+    }
+
+    @Override
+    public void close() {
+        if (http != null) http.stop(1);
+        requests.shutdown();
+        stockWatcher.close();
+        stockLedger.close();
+        salesJournal.close();
+        expiryScheduler.close();
+        eventThread.shutdown();
+    }
+}
@@ -0,0 +1,90 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Rendered report previews keyed by report type and parameters. Each entry
+ * is stamped with the data version it was computed at and is only served
+ * while that is still the current version, so a report is never shown
+ * stale. Least recently used entries are evicted once the cache holds more
+ * than {@link #MAX_ENTRIES} reports or {@link #MAX_CHARS} characters.
+ *
+ * <p>Confined to the EDT.
+ */
+final class ReportCache {
+    static final int MAX_ENTRIES = 32;
+    static final long MAX_CHARS = 4_000_000;
+
+    private static final class Entry {
+        final long version;
+        final String text;
+
+        Entry(long version, String text) {
+            this.version = version;
+            this.text = text;
+        }
+    }
+
+    private final LongSupplier dataVersion;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long chars;
+    private int hits;
+    private int misses;
+
+    ReportCache(LongSupplier dataVersion) {
+        this.dataVersion = dataVersion;
+    }
+
+    /** The current data version, to pass to {@link #put} once the report is computed. */
+    long version() {
+        return dataVersion.getAsLong();
+    }
+
+    /** The cached text for {@code key}, or null if missing or computed before the last write. */
+    String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.version == version()) {
+            hits++;
+            return entry.text;
+        }
+        if (entry != null) {
+            remove(key);
+        }
+        misses++;
+        return null;
+    }
+
+    /** Caches {@code text}, computed by a read that started at {@code version}. */
+    void put(String key, long version, String text) {
+        if (version != version() || text.length() > MAX_CHARS) return; // already stale
+        remove(key);
+        entries.put(key, new Entry(version, text));
+        chars += text.length();
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > MAX_ENTRIES || chars > MAX_CHARS) {
+            Map.Entry<String, Entry> evicted = eldest.next();
+            chars -= evicted.getValue().text.length();
+            eldest.remove();
+        }
+    }
+
+    void clear() {
+        entries.clear();
+        chars = 0;
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            chars -= removed.text.length();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ReportCache[entries=" + entries.size() + ", chars=" + chars +
+                ", hits=" + hits + ", misses=" + misses + "]";
+    }
+}
@@ -0,0 +1,305 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Renders report rows as the repository streams them in. Every row goes
+ * straight to the output in the chosen {@link Format}; only the first
+ * {@link #PREVIEW_ROWS} rows and the totals are kept, as fixed-width text,
+ * for the screen. Memory use does not grow with the number of rows, and
+ * each row is rendered into one reused {@link RowRenderer}, so a long
+ * export makes next to no garbage beyond the rows the driver reads.
+ *
+ * <p>With a null output the writer only builds the preview. Write failures
+ * surface from {@link #accept} as {@link UncheckedIOException}.
+ */
+abstract class ReportWriter<T> implements RowHandler<T> {
+    static final int PREVIEW_ROWS = 500;
+    private static final String RULE = "=".repeat(80);
+
+    enum Format {
+        TEXT("txt", "Text report"),
+        CSV("csv", "CSV"),
+        JSONL("jsonl", "JSON Lines");
+
+        final String extension;
+        final String description;
+
+        Format(String extension, String description) {
+            this.extension = extension;
+            this.description = description;
+        }
+    }
+
+    private final Format format;
+    private final Writer out;
+    private final String[] columns;
+    private final StringBuilder preview = new StringBuilder();
+    private final RowRenderer line = new RowRenderer();
+    private final Fields fields = new Fields();
+    int rows;
+
+    ReportWriter(String title, String textHeader, String[] columns, Format format, Writer out) throws IOException {
+        this.format = format;
+        this.out = out;
+        this.columns = columns;
+
+        preview.append(title).append('\n').append(RULE).append("\n\n")
+                .append(textHeader).append('\n').append("-".repeat(80)).append('\n');
+        if (out == null) return;
+        if (format == Format.TEXT) {
+            out.write(preview.toString());
+        } else if (format == Format.CSV) {
+            line.clear();
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) line.ch(',');
+                line.raw(columns[i]);
+            }
+            line.ch('\n').writeTo(out);
+        }
+    }
+
+    /** Opens {@code file} for a streamed export, replacing any existing file. */
+    static Writer open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /** Renders {@code row} as one fixed-width text line, without the newline. */
+    abstract void text(T row, RowRenderer line);
+
+    /** Adds the row's values to {@code fields} in {@code columns} order. */
+    abstract void fields(T row, Fields fields);
+
+    abstract void tally(T row);
+
+    @Override
+    public void accept(T row) {
+        tally(row);
+        rows++;
+        boolean previewed = rows <= PREVIEW_ROWS;
+        if (previewed || (out != null && format == Format.TEXT)) {
+            text(row, line.clear());
+            line.ch('\n');
+            if (previewed) line.appendTo(preview);
+        }
+        if (out == null) return;
+
+        try {
+            if (format != Format.TEXT) {
+                fields.start();
+                fields(row, fields);
+                fields.end();
+            }
+            line.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends the totals, flushes the output and returns the on-screen
+     * preview. CSV and JSON Lines exports hold rows only, no totals.
+     */
+    String finish(String... totals) throws IOException {
+        StringBuilder footer = new StringBuilder();
+        footer.append('\n').append(RULE).append('\n');
+        for (String total : totals) {
+            footer.append(total).append('\n');
+        }
+        footer.append(RULE);
+
+        if (out != null) {
+            if (format == Format.TEXT) out.append(footer);
+            out.flush();
+        }
+        if (rows > PREVIEW_ROWS) {
+            preview.append("... ").append(rows - PREVIEW_ROWS)
+                    .append(" more rows, export the report to see them all\n");
+        }
+        return preview.append(footer).toString();
+    }
+
+    /** One CSV line or JSON object, written field by field into the row buffer. */
+    final class Fields {
+        private int index;
+
+        Fields text(String value) {
+            next();
+            if (format == Format.CSV) {
+                line.csv(value);
+            } else {
+                line.json(value);
+            }
+            return this;
+        }
+
+        Fields number(long value) {
+            next();
+            line.number(value);
+            return this;
+        }
+
+        // exactly two decimals, as a JSON number too
+        Fields money(long ngwee) {
+            next();
+            line.money(ngwee);
+            return this;
+        }
+
+        private void start() {
+            index = 0;
+            line.clear();
+            if (format == Format.JSONL) line.ch('{');
+        }
+
+        private void end() {
+            if (format == Format.JSONL) line.ch('}');
+            line.ch('\n');
+        }
+
+        private void next() {
+            if (index > 0) line.ch(',');
+            if (format == Format.JSONL) line.json(columns[index]).ch(':');
+            index++;
+        }
+    }
+
+    /** Sales rows, as in the daily, weekly and monthly reports. */
+    static final class Sales extends ReportWriter<Sale> {
+        private static final String[] COLUMNS =
+                {"sale_id", "medicine_id", "medicine_name", "quantity", "price_per_unit", "total_amount", "sale_date"};
+
+        long totalRevenueNgwee;
+        int totalItems;
+
+        Sales(String title, Format format, Writer out) throws IOException {
+            super(title, String.format("%-20s %-10s %-12s %-12s %-12s",
+                    "Medicine", "Quantity", "Price/Unit", "Total", "Date"), COLUMNS, format, out);
+        }
+
+        @Override
+        void text(Sale sale, RowRenderer line) {
+            line.text(sale.medicineName, 20).ch(' ').number(sale.quantity, 10)
+                    .ch(' ').ch('K').money(sale.unitPriceNgwee, 11).ch(' ').ch('K').money(sale.totalNgwee, 11)
+                    .ch(' ').text(sale.saleDate, 12);
+        }
+
+        @Override
+        void fields(Sale sale, Fields fields) {
+            fields.number(sale.id).number(sale.medicineId).text(sale.medicineName).number(sale.quantity)
+                    .money(sale.unitPriceNgwee).money(sale.totalNgwee).text(sale.saleDate);
+        }
+
+        @Override
+        void tally(Sale sale) {
+            totalRevenueNgwee += sale.totalNgwee;
+            totalItems += sale.quantity;
+        }
+    }
+
+    /** Per-day, per-medicine totals from the sales rollup. */
+    static final class Rollup extends ReportWriter<DailySales> {
+        private static final String[] COLUMNS =
+                {"sale_date", "medicine_id", "medicine_name", "quantity", "revenue", "sale_count"};
+
+        long totalRevenueNgwee;
+        int totalItems;
+        int totalSales;
+
+        Rollup(String title, Format format, Writer out) throws IOException {
+            super(title, String.format("%-12s %-20s %-10s %-12s %-10s",
+                    "Date", "Medicine", "Quantity", "Revenue", "Sales"), COLUMNS, format, out);
+        }
+
+        @Override
+        void text(DailySales day, RowRenderer line) {
+            line.text(day.saleDate, 12).ch(' ').text(day.medicineName, 20).ch(' ').number(day.quantity, 10)
+                    .ch(' ').ch('K').money(day.revenueNgwee, 11).ch(' ').number(day.saleCount, 10);
+        }
+
+        @Override
+        void fields(DailySales day, Fields fields) {
+            fields.text(day.saleDate).number(day.medicineId).text(day.medicineName).number(day.quantity)
+                    .money(day.revenueNgwee).number(day.saleCount);
+        }
+
+        @Override
+        void tally(DailySales day) {
+            totalRevenueNgwee += day.revenueNgwee;
+            totalItems += day.quantity;
+            totalSales += day.saleCount;
+        }
+    }
+
+    /** Groups computed by {@link SalesAnalytics}, by product, day or week. */
+    static final class Groups extends ReportWriter<SalesAnalytics.Group> {
+        private static final String[] COLUMNS = {"group", "quantity", "revenue", "sale_count"};
+
+        long totalRevenueNgwee;
+        long totalItems;
+        long totalSales;
+
+        Groups(String title, Format format, Writer out) throws IOException {
+            super(title, String.format("%-30s %-10s %-14s %-10s",
+                    "Group", "Quantity", "Revenue", "Sales"), COLUMNS, format, out);
+        }
+
+        @Override
+        void text(SalesAnalytics.Group group, RowRenderer line) {
+            line.text(group.label, 30).ch(' ').number(group.quantity, 10)
+                    .ch(' ').ch('K').money(group.ngwee, 13).ch(' ').number(group.sales, 10);
+        }
+
+        @Override
+        void fields(SalesAnalytics.Group group, Fields fields) {
+            fields.text(group.label).number(group.quantity).money(group.ngwee).number(group.sales);
+        }
+
+        @Override
+        void tally(SalesAnalytics.Group group) {
+            totalRevenueNgwee += group.ngwee;
+            totalItems += group.quantity;
+            totalSales += group.sales;
+        }
+    }
+
+    /** Stock rows, shared by the inventory and expired medicines reports. */
+    static final class Stock extends ReportWriter<Medicine> {
+        private static final String[] COLUMNS =
+                {"id", "name", "batch_number", "expiry_date", "quantity", "price"};
+
+        int totalItems;
+        long totalValueNgwee;
+
+        Stock(String title, Format format, Writer out) throws IOException {
+            super(title, String.format("%-20s %-15s %-15s %-10s %-10s",
+                    "Medicine", "Batch Number", "Expiry Date", "Quantity", "Price"), COLUMNS, format, out);
+        }
+
+        @Override
+        void text(Medicine med, RowRenderer line) {
+            line.text(med.name, 20).ch(' ').text(med.batchNumber, 15).ch(' ').text(med.expiryDate, 15)
+                    .ch(' ').number(med.quantity, 10).ch(' ').ch('K').money(med.priceNgwee, 9);
+        }
+
+        @Override
+        void fields(Medicine med, Fields fields) {
+            fields.number(med.id).text(med.name).text(med.batchNumber).text(med.expiryDate)
+                    .number(med.quantity).money(med.priceNgwee);
+        }
+
+        @Override
+        void tally(Medicine med) {
+            totalItems += med.quantity;
+            totalValueNgwee += med.quantity * med.priceNgwee;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * The reports, shared by the Reports tab and the HTTP API. Each one streams
+ * its rows through a {@link ReportWriter} in the given format (null output
+ * for a preview only) and returns the on-screen preview text.
+ */
+final class Reports {
+
+    private Reports() {
+    }
+
+    static String daily(DataSession db, LocalDate day, ReportWriter.Format format, Writer out) throws Exception {
+        ReportWriter.Sales report = new ReportWriter.Sales("Daily Sales Report - " + day, format, out);
+        db.sales.forEachOn(day.toString(), report);
+        return finishSales(report);
+    }
+
+    /** Daily totals per medicine from the rollup, or every sale when {@code itemize} is set. */
+    static String period(DataSession db, String heading, LocalDate start, LocalDate end, boolean itemize,
+                         ReportWriter.Format format, Writer out) throws Exception {
+        if (itemize) {
+            ReportWriter.Sales report = new ReportWriter.Sales(heading, format, out);
+            db.sales.forEachBetween(start.toString(), end.toString(), report);
+            return finishSales(report);
+        }
+
+        ReportWriter.Rollup report = new ReportWriter.Rollup(heading, format, out);
+        db.sales.forEachDailyTotalBetween(start.toString(), end.toString(), report);
+        return report.finish(
+                String.format("Total Sales: %d", report.totalSales),
+                String.format("Total Items Sold: %d", report.totalItems),
+                "Total Revenue: K" + Money.format(report.totalRevenueNgwee));
+    }
+
+    static String inventory(DataSession db, ReportWriter.Format format, Writer out) throws Exception {
+        ReportWriter.Stock report = new ReportWriter.Stock("Inventory Report", format, out);
+        db.medicines.forEachByName(report);
+
+        return report.finish(
+                String.format("Total Items in Stock: %d", report.totalItems),
+                "Total Inventory Value: K" + Money.format(report.totalValueNgwee));
+    }
+
+    static String expired(DataSession db, LocalDate today, ReportWriter.Format format, Writer out) throws Exception {
+        ReportWriter.Stock report = new ReportWriter.Stock("Expired Medicines Report", format, out);
+        db.medicines.forEachExpiredBefore(today.toString(), report);
+
+        if (report.rows == 0) {
+            return report.finish("Expired Medicines Not Found!.");
+        }
+        return report.finish(
+                String.format("Total Expired Items: %d", report.totalItems),
+                "Total Value of Expired Stock: K" + Money.format(report.totalValueNgwee));
+    }
+
+    /** Aggregated from the in-memory sales columns, after catching them up with the database. */
+    static String analytics(DataSession db, SalesAnalytics analytics, SalesAnalytics.GroupBy groupBy,
+                            LocalDate start, LocalDate end, ReportWriter.Format format, Writer out) throws Exception {
+        analytics.catchUp(db);
+        long started = System.nanoTime();
+        List<SalesAnalytics.Group> groups = analytics.aggregate(groupBy, start, end);
+        long micros = (System.nanoTime() - started) / 1000;
+
+        ReportWriter.Groups report = new ReportWriter.Groups(
+                "Sales by " + groupBy.name().toLowerCase() + " - " + start + " to " + end, format, out);
+        for (SalesAnalytics.Group group : groups) {
+            report.accept(group);
+        }
+        return report.finish(
+                String.format("Total Sales: %d", report.totalSales),
+                String.format("Total Items Sold: %d", report.totalItems),
+                "Total Revenue: K" + Money.format(report.totalRevenueNgwee),
+                String.format("Aggregated %d sales in %d us", analytics.size(), micros));
+    }
+
+    private static String finishSales(ReportWriter.Sales report) throws IOException {
+        return report.finish(
+                String.format("Total Items Sold: %d", report.totalItems),
+                "Total Revenue: K" + Money.format(report.totalRevenueNgwee));
+    }
+}
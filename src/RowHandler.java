@@ -0,0 +1,7 @@
+import java.sql.SQLException;
+
+/** Receives query rows one at a time, so large results never have to be held in memory. */
+@FunctionalInterface
+interface RowHandler<T> {
+    void accept(T row) throws SQLException;
+}
@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Builds one report row at a time in a char buffer that is reused for every
+ * row. Numbers and money are written digit by digit and columns are padded
+ * in place, so rendering allocates nothing per row, unlike
+ * {@code String.format}; the finished row is copied to a {@link Writer} or a
+ * {@link StringBuilder}. Not thread-safe.
+ */
+final class RowRenderer {
+    private char[] buf = new char[256];
+    private int length;
+
+    /** Starts a new row. */
+    RowRenderer clear() {
+        length = 0;
+        return this;
+    }
+
+    int length() {
+        return length;
+    }
+
+    RowRenderer ch(char c) {
+        ensure(1);
+        buf[length++] = c;
+        return this;
+    }
+
+    /** {@code s} as is, or {@code null} like {@code String.valueOf}. */
+    RowRenderer raw(String s) {
+        if (s == null) s = "null";
+        ensure(s.length());
+        s.getChars(0, s.length(), buf, length);
+        length += s.length();
+        return this;
+    }
+
+    RowRenderer number(long value) {
+        if (value < 0) {
+            ch('-');
+            if (value == Long.MIN_VALUE) return raw("9223372036854775808");
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) digits++;
+        ensure(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            buf[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+        return this;
+    }
+
+    /** {@code ngwee} as kwacha with two decimals, without a currency sign. */
+    RowRenderer money(long ngwee) {
+        long kwacha = ngwee / 100;
+        int fraction = (int) Math.abs(ngwee % 100);
+        if (ngwee < 0) {
+            ch('-');
+            kwacha = -kwacha;
+        }
+        return number(kwacha).ch('.').ch((char) ('0' + fraction / 10)).ch((char) ('0' + fraction % 10));
+    }
+
+    // left-aligned in a fixed-width column, like %-Ns; a longer value is not cut
+    RowRenderer text(String s, int width) {
+        int start = length;
+        return raw(s).pad(start, width);
+    }
+
+    RowRenderer number(long value, int width) {
+        int start = length;
+        return number(value).pad(start, width);
+    }
+
+    RowRenderer money(long ngwee, int width) {
+        int start = length;
+        return money(ngwee).pad(start, width);
+    }
+
+    /** {@code s} as a CSV field, quoted only when it holds a comma, quote or line break. */
+    RowRenderer csv(String s) {
+        if (s == null) return this;
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) return raw(s);
+        ch('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') ch('"');
+            ch(c);
+        }
+        return ch('"');
+    }
+
+    /** {@code s} as a quoted JSON string, escaped as {@link Json#appendString} does, or {@code null}. */
+    RowRenderer json(String s) {
+        if (s == null) return raw("null");
+        ch('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': ch('\\').ch('"'); break;
+                case '\\': ch('\\').ch('\\'); break;
+                case '\n': ch('\\').ch('n'); break;
+                case '\r': ch('\\').ch('r'); break;
+                case '\t': ch('\\').ch('t'); break;
+                default:
+                    if (c < 0x20) {
+                        ch('\\').ch('u').ch('0').ch('0').ch(Character.forDigit(c >> 4, 16)).ch(Character.forDigit(c & 0xf, 16));
+                    } else {
+                        ch(c);
+                    }
+            }
+        }
+        return ch('"');
+    }
+
+    void writeTo(Writer out) throws IOException {
+        out.write(buf, 0, length);
+    }
+
+    void appendTo(StringBuilder out) {
+        out.append(buf, 0, length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, length);
+    }
+
+    private RowRenderer pad(int start, int width) {
+        int spaces = width - (length - start);
+        if (spaces <= 0) return this;
+        ensure(spaces);
+        for (int i = 0; i < spaces; i++) {
+            buf[length++] = ' ';
+        }
+        return this;
+    }
+
+    private void ensure(int more) {
+        if (length + more > buf.length) {
+            char[] grown = new char[Math.max(buf.length * 2, length + more)];
+            System.arraycopy(buf, 0, grown, 0, length);
+            buf = grown;
+        }
+    }
+}
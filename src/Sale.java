@@ -0,0 +1,35 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+// One row of the sales table
+class Sale {
+    int id;
+    int medicineId;
+    String medicineName;
+    int quantity;
+    long unitPriceNgwee; //see Money
+    long totalNgwee;
+    String saleDate;
+
+    static Sale read(ResultSet rs) throws SQLException {
+        Sale sale = new Sale();
+        sale.id = rs.getInt("id");
+        sale.medicineId = rs.getInt("medicine_id");
+        sale.medicineName = rs.getString("medicine_name");
+        sale.quantity = rs.getInt("quantity");
+        sale.unitPriceNgwee = rs.getLong("price_per_unit_ngwee");
+        sale.totalNgwee = rs.getLong("total_ngwee");
+        sale.saleDate = rs.getString("sale_date");
+        return sale;
+    }
+
+    // what was charged; batches of one medicine can differ in price
+    static long total(List<Sale> sales) {
+        long total = 0;
+        for (Sale sale : sales) {
+            total += sale.totalNgwee;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,28 @@
+import java.util.List;
+
+/**
+ * A basket was sold and its sales are now in the database. Carries the new
+ * sales rows with their ids, and the batches they were taken from as
+ * committed. Published by the {@link SalesJournal} as it drains.
+ */
+final class SaleRecorded {
+    final List<Sale> sales;
+    final List<Medicine> batches;
+
+    SaleRecorded(List<Sale> sales, List<Medicine> batches) {
+        this.sales = sales;
+        this.batches = batches;
+    }
+
+    /** Publishes this sale, then a {@link StockAdjusted} for each batch it sold from. */
+    void publishTo(EventBus events) {
+        events.publish(this);
+        for (Medicine batch : batches) {
+            events.publish(new StockAdjusted(batch));
+        }
+    }
+
+    long total() {
+        return Sale.total(sales);
+    }
+}
@@ -0,0 +1,340 @@
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Every sale held in memory as primitive columns (epoch day, product,
+ * quantity, ngwee), so ad-hoc aggregations over years of sales are a
+ * parallel scan of a few arrays instead of a database query. A product is
+ * a medicine name, so every batch of it counts towards the same group.
+ *
+ * <p>Rows are appended in sale id order by {@link #catchUp}, which reads
+ * only the sales after the last one loaded. Aggregations work on a snapshot
+ * of the columns and never block appends.
+ */
+final class SalesAnalytics {
+    // rows per fork/join leaf; below this splitting costs more than it saves
+    private static final int LEAF_SIZE = 1 << 15;
+
+    enum GroupBy { PRODUCT, DAY, WEEK }
+
+    /** One output row: a product, a day or a week. */
+    static final class Group {
+        final String label;
+        final long quantity;
+        final long ngwee;
+        final int sales;
+
+        Group(String label, long quantity, long ngwee, int sales) {
+            this.label = label;
+            this.quantity = quantity;
+            this.ngwee = ngwee;
+            this.sales = sales;
+        }
+    }
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    // guarded by appendLock; a slot below size never changes once written
+    private int[] epochDay = new int[1024];
+    private int[] product = new int[1024]; // dense index into productNames
+    private int[] quantity = new int[1024];
+    private long[] ngwee = new long[1024];
+    private int rows;
+    private int lastSaleId;
+    private final Map<String, Integer> productIndex = new HashMap<>();
+    private String[] productNames = new String[64];
+
+    private volatile Columns columns = new Columns(epochDay, product, quantity, ngwee, 0, productNames, 0);
+
+    // an immutable view of the first size rows
+    private static final class Columns {
+        final int[] epochDay;
+        final int[] product;
+        final int[] quantity;
+        final long[] ngwee;
+        final int size;
+        final String[] productNames;
+        final int products;
+
+        Columns(int[] epochDay, int[] product, int[] quantity, long[] ngwee, int size,
+                String[] productNames, int products) {
+            this.epochDay = epochDay;
+            this.product = product;
+            this.quantity = quantity;
+            this.ngwee = ngwee;
+            this.size = size;
+            this.productNames = productNames;
+            this.products = products;
+        }
+    }
+
+    int size() {
+        return columns.size;
+    }
+
+    /** Appends every sale recorded since the last call. Blocks while another thread is appending. */
+    void catchUp(DataSession db) throws SQLException {
+        appendLock.lock();
+        try {
+            appendNewSales(db);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #catchUp} but returns at once if another thread is already
+     * appending, e.g. the initial load. Meant for the writer thread after a
+     * sale; anything skipped is picked up by the next catch-up.
+     */
+    void catchUpIfIdle(DataSession db) throws SQLException {
+        if (!appendLock.tryLock()) return;
+        try {
+            appendNewSales(db);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void appendNewSales(DataSession db) throws SQLException {
+        // sales arrive in id order, mostly on the same day, so parse each date string once
+        String[] lastDate = {null};
+        int[] lastDay = {0};
+
+        db.sales.forEachAfter(lastSaleId, sale -> {
+            lastSaleId = sale.id;
+            if (sale.saleDate == null) return;
+            if (!sale.saleDate.equals(lastDate[0])) {
+                lastDate[0] = sale.saleDate;
+                lastDay[0] = (int) LocalDate.parse(sale.saleDate).toEpochDay();
+            }
+            ensureCapacity(rows + 1);
+            int row = rows++;
+            epochDay[row] = lastDay[0];
+            product[row] = productOf(sale.medicineName);
+            quantity[row] = sale.quantity;
+            ngwee[row] = sale.totalNgwee;
+        });
+
+        if (rows != columns.size || columns.products != productIndex.size()) {
+            columns = new Columns(epochDay, product, quantity, ngwee, rows,
+                    productNames, productIndex.size());
+        }
+    }
+
+    // sales keep the name they were sold under, so batches of one medicine share a product
+    private int productOf(String name) {
+        Integer index = productIndex.get(name);
+        if (index == null) {
+            index = productIndex.size();
+            if (index == productNames.length) {
+                productNames = Arrays.copyOf(productNames, index * 2);
+            }
+            productNames[index] = name;
+            productIndex.put(name, index);
+        }
+        return index;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= epochDay.length) return;
+        int capacity = Math.max(needed, epochDay.length * 2);
+        epochDay = Arrays.copyOf(epochDay, capacity);
+        product = Arrays.copyOf(product, capacity);
+        quantity = Arrays.copyOf(quantity, capacity);
+        ngwee = Arrays.copyOf(ngwee, capacity);
+    }
+
+    /**
+     * Totals for sales between {@code start} and {@code end} inclusive, grouped
+     * by product (highest revenue first), day or ISO week (oldest first).
+     * Groups without sales are left out.
+     */
+    List<Group> aggregate(GroupBy groupBy, LocalDate start, LocalDate end) {
+        Columns snapshot = columns;
+        int startDay = (int) start.toEpochDay();
+        int endDay = (int) end.toEpochDay();
+        int firstDay = groupBy == GroupBy.WEEK
+                ? (int) start.with(DayOfWeek.MONDAY).toEpochDay() : startDay;
+        int buckets;
+        switch (groupBy) {
+            case PRODUCT: buckets = snapshot.products; break;
+            case DAY: buckets = endDay - startDay + 1; break;
+            default: buckets = (endDay - firstDay) / 7 + 1;
+        }
+        if (endDay < startDay || buckets <= 0) return new ArrayList<>();
+
+        Sums totals = ForkJoinPool.commonPool().invoke(
+                new Aggregate(snapshot, 0, snapshot.size, groupBy, startDay, endDay, firstDay, buckets));
+
+        int[] keys = totals.keys();
+        Arrays.sort(keys);
+        List<Group> groups = new ArrayList<>(keys.length);
+        for (int k : keys) {
+            int slot = totals.slot(k);
+            String label;
+            switch (groupBy) {
+                case PRODUCT: label = snapshot.productNames[k]; break;
+                case DAY: label = LocalDate.ofEpochDay(firstDay + k).toString(); break;
+                default: label = "Week of " + LocalDate.ofEpochDay(firstDay + 7L * k);
+            }
+            groups.add(new Group(label, totals.quantity[slot], totals.ngwee[slot], (int) totals.count[slot]));
+        }
+        if (groupBy == GroupBy.PRODUCT) {
+            groups.sort((a, b) -> Long.compare(b.ngwee, a.ngwee));
+        }
+        return groups;
+    }
+
+    /**
+     * Quantity, ngwee and sale count for just the buckets a range of rows
+     * touched, in an open-addressing table keyed by bucket. A leaf sized by
+     * its own rows, not by every product ever sold, keeps a report over a
+     * million products from allocating and merging a million-slot array per
+     * leaf.
+     */
+    private static final class Sums {
+        private static final int FREE = -1; // buckets are never negative
+
+        private int[] buckets;
+        long[] quantity;
+        long[] ngwee;
+        long[] count;
+        private int size;
+
+        Sums(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+            buckets = new int[capacity];
+            Arrays.fill(buckets, FREE);
+            quantity = new long[capacity];
+            ngwee = new long[capacity];
+            count = new long[capacity];
+        }
+
+        void add(int bucket, long qty, long sum, long sales) {
+            int slot = slot(bucket);
+            if (buckets[slot] == FREE) {
+                if ((size + 1) * 2 > buckets.length) {
+                    grow();
+                    slot = slot(bucket);
+                }
+                buckets[slot] = bucket;
+                size++;
+            }
+            quantity[slot] += qty;
+            ngwee[slot] += sum;
+            count[slot] += sales;
+        }
+
+        void addAll(Sums other) {
+            for (int i = 0; i < other.buckets.length; i++) {
+                if (other.buckets[i] != FREE) {
+                    add(other.buckets[i], other.quantity[i], other.ngwee[i], other.count[i]);
+                }
+            }
+        }
+
+        /** The buckets present, in no particular order. */
+        int[] keys() {
+            int[] keys = new int[size];
+            int n = 0;
+            for (int bucket : buckets) {
+                if (bucket != FREE) keys[n++] = bucket;
+            }
+            return keys;
+        }
+
+        // the slot holding bucket, or the free slot where it would go
+        int slot(int bucket) {
+            int mask = buckets.length - 1;
+            int h = bucket * 0x9E3779B9;
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (buckets[slot] != bucket && buckets[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            int[] oldBuckets = buckets;
+            long[] oldQuantity = quantity;
+            long[] oldNgwee = ngwee;
+            long[] oldCount = count;
+            int capacity = oldBuckets.length * 2;
+            buckets = new int[capacity];
+            Arrays.fill(buckets, FREE);
+            quantity = new long[capacity];
+            ngwee = new long[capacity];
+            count = new long[capacity];
+            for (int i = 0; i < oldBuckets.length; i++) {
+                if (oldBuckets[i] == FREE) continue;
+                int slot = slot(oldBuckets[i]);
+                buckets[slot] = oldBuckets[i];
+                quantity[slot] = oldQuantity[i];
+                ngwee[slot] = oldNgwee[i];
+                count[slot] = oldCount[i];
+            }
+        }
+    }
+
+    // sums per bucket over rows [from, to), splitting in halves down to LEAF_SIZE
+    private static final class Aggregate extends RecursiveTask<Sums> {
+        private final Columns c;
+        private final int from, to;
+        private final GroupBy groupBy;
+        private final int startDay, endDay, firstDay, buckets;
+
+        Aggregate(Columns c, int from, int to, GroupBy groupBy, int startDay, int endDay, int firstDay, int buckets) {
+            this.c = c;
+            this.from = from;
+            this.to = to;
+            this.groupBy = groupBy;
+            this.startDay = startDay;
+            this.endDay = endDay;
+            this.firstDay = firstDay;
+            this.buckets = buckets;
+        }
+
+        @Override
+        protected Sums compute() {
+            if (to - from > LEAF_SIZE) {
+                int mid = (from + to) >>> 1;
+                Aggregate left = new Aggregate(c, from, mid, groupBy, startDay, endDay, firstDay, buckets);
+                left.fork();
+                Sums right = new Aggregate(c, mid, to, groupBy, startDay, endDay, firstDay, buckets).compute();
+                Sums merged = left.join();
+                // fold the smaller table into the larger, so merging costs what was touched
+                if (merged.size < right.size) {
+                    right.addAll(merged);
+                    return right;
+                }
+                merged.addAll(right);
+                return merged;
+            }
+
+            // most leaves cover a few weeks of sales; the table grows if this one touches more
+            Sums sums = new Sums(Math.min(buckets, 1024));
+            for (int i = from; i < to; i++) {
+                int day = c.epochDay[i];
+                if (day < startDay || day > endDay) continue;
+                int k;
+                switch (groupBy) {
+                    case PRODUCT: k = c.product[i]; break;
+                    case DAY: k = day - firstDay; break;
+                    default: k = (day - firstDay) / 7;
+                }
+                sums.add(k, c.quantity[i], c.ngwee[i], 1);
+            }
+            return sums;
+        }
+    }
+}
@@ -0,0 +1,458 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only write-ahead log for sales, kept in a memory-mapped file next
+ * to the database. A checkout is one sequential append of its priced sales;
+ * it is acknowledged as soon as the record is forced to disk. The journal's
+ * own thread does the forcing, and every record appended while a force is
+ * running goes out with the next one, so concurrent checkouts share their
+ * fsyncs (group commit).
+ *
+ * <p>The same thread then hands forced records to the writer thread in
+ * batches, where they go into the sales, medicines and rollup tables in one
+ * transaction together with the journal checkpoint, committed with
+ * {@code synchronous = FULL} so it is on disk before the records can go. Until then their stock
+ * stays held in the {@link StockLedger}. Once every record is in the
+ * database the file is rewound and reused.
+ *
+ * <p>On startup {@link #recover} replays the records the checkpoint has not
+ * seen, so an acknowledged sale survives a crash at any point. Records are
+ * numbered and checksummed; the first torn or out-of-sequence record marks
+ * the end of the log.
+ *
+ * <p>File layout: a header of magic, version and the sequence of the first
+ * record, then records of {@code length, crc32c, payload}. The payload is
+ * the sequence followed by the sales, with amounts in ngwee since version 2;
+ * a version 1 file, with amounts as double kwacha, is still replayed.
+ */
+final class SalesJournal implements AutoCloseable {
+    private static final int MAGIC = 0x50484a31; // "PHJ1"
+    private static final int VERSION = 2;
+    private static final int VERSION_DOUBLE_KWACHA = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_OVERHEAD = 8; // length and checksum
+    private static final int INITIAL_SIZE = 4 << 20;
+    private static final int MAX_BATCH = 1024;    // records per database transaction
+    private static final long RETRY_MILLIS = 1000;
+    private static final int FULL_SYNC = 2;       // PRAGMA synchronous = FULL: WAL commits are fsynced
+
+    private static final class Entry {
+        final long sequence;
+        final List<Sale> sales;
+        final StockLedger.Reservation held; // null when replayed at startup
+        final CompletableFuture<Long> durable = new CompletableFuture<>();
+        final int position;
+
+        Entry(long sequence, List<Sale> sales, StockLedger.Reservation held, int position) {
+            this.sequence = sequence;
+            this.sales = sales;
+            this.held = held;
+            this.position = position;
+        }
+    }
+
+    private final Path file;
+    private final DataAccessExecutor dataAccess;
+    private final EventBus events;
+    private final SalesAnalytics analytics;
+    private final Thread thread;
+
+    // guarded by this
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int position;
+    private long nextSequence;
+    private long writtenSequence;
+    private long durableSequence;
+    private final ArrayDeque<Entry> unsynced = new ArrayDeque<>(); // appended, waiting for a force
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();  // appended, not yet in the database
+    private boolean draining;
+    private long retryAt;
+    private IOException broken;
+    private boolean closed;
+
+    SalesJournal(Path file, DataAccessExecutor dataAccess, EventBus events, SalesAnalytics analytics) {
+        this.file = file;
+        this.dataAccess = dataAccess;
+        this.events = events;
+        this.analytics = analytics;
+        this.thread = new Thread(this::run, "pharmacy-journal");
+        this.thread.setDaemon(true);
+    }
+
+    /** The journal for a {@code jdbc:sqlite:} database file: the same path with a suffix. */
+    static Path pathFor(String dbUrl) {
+        String path = dbUrl.startsWith("jdbc:sqlite:") ? dbUrl.substring("jdbc:sqlite:".length()) : dbUrl;
+        int query = path.indexOf('?');
+        return Paths.get((query >= 0 ? path.substring(0, query) : path) + "-sales.journal");
+    }
+
+    /**
+     * Opens the file and writes any sales the database is missing. Run on
+     * the writer thread after the schema is in place and before the
+     * {@link StockLedger} loads, so it counts the replayed sales.
+     */
+    synchronized void recover(DataSession db) throws IOException, SQLException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), INITIAL_SIZE));
+        long applied = db.sales.journalApplied();
+
+        List<Entry> replay = new ArrayList<>();
+        long last = 0;
+        position = HEADER_BYTES;
+        int version = map.getInt(4);
+        if (map.getInt(0) == MAGIC && (version == VERSION || version == VERSION_DOUBLE_KWACHA)) {
+            for (long expected = map.getLong(8); ; expected++) {
+                Entry entry = read(position, expected, version);
+                if (entry == null) break;
+                if (entry.sequence > applied) replay.add(entry);
+                position += RECORD_OVERHEAD + map.getInt(position);
+                last = expected;
+            }
+        }
+        // nothing past the last good record was ever acknowledged; clear it so it can't reappear
+        clear(position, map.capacity());
+
+        if (!replay.isEmpty()) {
+            apply(db, replay);
+            System.err.println("Sales journal: replayed " + replay.size() + " sales into the database");
+        }
+        writtenSequence = durableSequence = last;
+        nextSequence = Math.max(last, applied) + 1;
+        rewind();
+        map.force();
+    }
+
+    /** Starts forcing and draining. Call after {@link #recover}. */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Journals {@code sales}, whose stock {@code held} has reserved. The
+     * future completes with the record's sequence once it is on disk; from
+     * then on the sale will reach the database even across a crash, and
+     * {@code held} is settled when it does.
+     */
+    CompletableFuture<Long> append(List<Sale> sales, StockLedger.Reservation held) {
+        synchronized (this) {
+            if (broken != null || closed || map == null) {
+                IOException failure = broken != null ? broken : new IOException("Sales journal is not open");
+                return CompletableFuture.failedFuture(failure);
+            }
+            long sequence = nextSequence++;
+            byte[] payload = encode(sequence, sales);
+            try {
+                ensureCapacity(RECORD_OVERHEAD + payload.length);
+            } catch (IOException e) {
+                nextSequence--;
+                return CompletableFuture.failedFuture(e);
+            }
+            Entry entry = new Entry(sequence, sales, held, position);
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            map.putInt(position, payload.length);
+            map.putInt(position + 4, (int) crc.getValue());
+            map.put(position + RECORD_OVERHEAD, payload);
+            position += RECORD_OVERHEAD + payload.length;
+            writtenSequence = sequence;
+            unsynced.add(entry);
+            pending.add(entry);
+            notifyAll();
+            return entry.durable;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            long target;
+            MappedByteBuffer toForce;
+            synchronized (this) {
+                try {
+                    while (!closed && writtenSequence == durableSequence && !canDrain()) {
+                        long wait = draining || pending.isEmpty() ? 0 : Math.max(1, retryAt - System.currentTimeMillis());
+                        wait(wait);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed && writtenSequence == durableSequence) return;
+                target = writtenSequence;
+                toForce = map;
+            }
+
+            if (target > durableSequence()) {
+                force(toForce, target);
+            }
+
+            List<Entry> batch = null;
+            synchronized (this) {
+                if (canDrain()) {
+                    batch = new ArrayList<>();
+                    for (Iterator<Entry> it = pending.iterator(); it.hasNext() && batch.size() < MAX_BATCH; ) {
+                        Entry entry = it.next();
+                        if (entry.sequence > durableSequence) break;
+                        batch.add(entry);
+                    }
+                    draining = true;
+                }
+            }
+            if (batch != null) drain(batch);
+        }
+    }
+
+    private synchronized long durableSequence() {
+        return durableSequence;
+    }
+
+    // forcing outside the lock is what lets appends pile up for the next group
+    private void force(MappedByteBuffer toForce, long target) {
+        IOException failure = null;
+        try {
+            toForce.force();
+        } catch (UncheckedIOException e) {
+            failure = e.getCause();
+        }
+
+        List<Entry> done = new ArrayList<>();
+        synchronized (this) {
+            // on failure every record not yet forced goes, including those appended during the force
+            while (!unsynced.isEmpty() && (failure != null || unsynced.peek().sequence <= target)) {
+                done.add(unsynced.poll());
+            }
+            if (failure == null) {
+                durableSequence = target;
+            } else {
+                // unacknowledged records must not be replayed later; stop taking sales, append fails from now on
+                broken = failure;
+                for (Entry entry : done) {
+                    pending.remove(entry);
+                }
+                if (!done.isEmpty()) {
+                    clear(done.get(0).position, position);
+                    position = done.get(0).position;
+                }
+                writtenSequence = durableSequence;
+            }
+        }
+        for (Entry entry : done) {
+            if (failure == null) entry.durable.complete(entry.sequence);
+            else entry.durable.completeExceptionally(failure);
+        }
+    }
+
+    // caller holds the lock
+    private boolean canDrain() {
+        return !draining && !pending.isEmpty() && pending.peek().sequence <= durableSequence
+                && System.currentTimeMillis() >= retryAt;
+    }
+
+    private void drain(List<Entry> batch) {
+        dataAccess.write(db -> {
+            apply(db, batch);
+            return null;
+        }).whenComplete((ignored, failure) -> {
+            synchronized (this) {
+                draining = false;
+                if (failure == null) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        pending.poll();
+                    }
+                    if (pending.isEmpty()) rewind();
+                } else {
+                    // the records are safe on disk; keep them and try again
+                    System.err.println("Sales journal: could not write sales, retrying: " + failure);
+                    retryAt = System.currentTimeMillis() + RETRY_MILLIS;
+                }
+                notifyAll();
+            }
+        });
+    }
+
+    // writer thread
+    private void apply(DataSession db, List<Entry> batch) throws SQLException {
+        long last = batch.get(batch.size() - 1).sequence;
+        // these records are rewound once this returns, so the commit must reach the disk, not only the WAL
+        int synchronous = synchronous(db, -1);
+        synchronous(db, FULL_SYNC);
+        try {
+            db.inTransaction(() -> {
+                for (Entry entry : batch) {
+                    db.sales.recordSold(entry.sales);
+                }
+                db.sales.setJournalApplied(last);
+                return null;
+            });
+        } finally {
+            synchronous(db, synchronous);
+        }
+
+        Map<Integer, Medicine> committed = new HashMap<>(); // stock as committed, read once per batch
+        for (Entry entry : batch) {
+            List<Medicine> sold = new ArrayList<>(entry.sales.size());
+            for (Sale sale : entry.sales) {
+                Medicine med = committed.get(sale.medicineId);
+                if (med == null) {
+                    med = db.medicines.findById(sale.medicineId);
+                    if (med == null) continue;
+                    committed.put(med.id, med);
+                }
+                sold.add(med);
+            }
+            if (entry.held != null) entry.held.persisted(sold);
+            new SaleRecorded(entry.sales, sold).publishTo(events);
+        }
+        analytics.catchUpIfIdle(db);
+    }
+
+    // sets PRAGMA synchronous when level is not negative; returns the level in force before
+    private static int synchronous(DataSession db, int level) throws SQLException {
+        try (Statement stmt = db.connection().createStatement()) {
+            int current;
+            try (ResultSet rs = stmt.executeQuery("PRAGMA synchronous")) {
+                current = rs.next() ? rs.getInt(1) : FULL_SYNC;
+            }
+            if (level >= 0 && level != current) stmt.execute("PRAGMA synchronous = " + level);
+            return current;
+        }
+    }
+
+    // caller holds the lock; only once every record is in the database
+    private void rewind() {
+        map.putInt(0, MAGIC);
+        map.putInt(4, VERSION);
+        map.putLong(8, nextSequence);
+        position = HEADER_BYTES;
+    }
+
+    // caller holds the lock
+    private void clear(int from, int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            map.putLong(i, 0);
+        }
+        for (; i < to; i++) {
+            map.put(i, (byte) 0);
+        }
+    }
+
+    // caller holds the lock
+    private void ensureCapacity(int bytes) throws IOException {
+        if (position + bytes <= map.capacity()) return;
+        if (pending.isEmpty()) {
+            rewind();
+            if (position + bytes <= map.capacity()) return;
+        }
+        long size = Math.max(2L * map.capacity(), position + (long) bytes);
+        if (size > Integer.MAX_VALUE) throw new IOException("Sales journal is full");
+        map.force();
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private static byte[] encode(long sequence, List<Sale> sales) {
+        int size = 8 + 4 + 4;
+        byte[][] names = new byte[sales.size()][];
+        byte[] date = sales.isEmpty() ? new byte[0] : sales.get(0).saleDate.getBytes(StandardCharsets.UTF_8);
+        size += 4 + date.length;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = sales.get(i).medicineName.getBytes(StandardCharsets.UTF_8);
+            size += 4 + 4 + names[i].length + 4 + 8 + 8;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putLong(sequence);
+        out.putInt(date.length).put(date);
+        out.putInt(sales.size());
+        for (int i = 0; i < names.length; i++) {
+            Sale sale = sales.get(i);
+            out.putInt(sale.medicineId);
+            out.putInt(names[i].length).put(names[i]);
+            out.putInt(sale.quantity);
+            out.putLong(sale.unitPriceNgwee);
+            out.putLong(sale.totalNgwee);
+        }
+        return out.array();
+    }
+
+    // null unless a whole record with this sequence and a good checksum starts here
+    private Entry read(int at, long expected, int version) {
+        if (at + RECORD_OVERHEAD > map.capacity()) return null;
+        int length = map.getInt(at);
+        if (length < 16 || length > map.capacity() - at - RECORD_OVERHEAD) return null;
+        byte[] payload = new byte[length];
+        map.get(at + RECORD_OVERHEAD, payload);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        if ((int) crc.getValue() != map.getInt(at + 4)) return null;
+
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        if (in.getLong() != expected) return null;
+        String date = string(in);
+        int count = in.getInt();
+        List<Sale> sales = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Sale sale = new Sale();
+            sale.medicineId = in.getInt();
+            sale.medicineName = string(in);
+            sale.quantity = in.getInt();
+            if (version == VERSION_DOUBLE_KWACHA) {
+                sale.unitPriceNgwee = Money.of(in.getDouble());
+                sale.totalNgwee = Money.of(in.getDouble());
+            } else {
+                sale.unitPriceNgwee = in.getLong();
+                sale.totalNgwee = in.getLong();
+            }
+            sale.saleDate = date;
+            sales.add(sale);
+        }
+        return new Entry(expected, sales, null, at);
+    }
+
+    private static String string(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Stops the journal thread once everything appended is on disk. Records
+     * not yet in the database stay in the file for the next {@link #recover}.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                if (channel != null) channel.close();
+            } catch (IOException e) {
+                System.err.println("Sales journal: could not close " + file + ": " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * All SQL against the sales table. Statements come from the session's
+ * {@link StatementCache}; result sets are closed with try-with-resources.
+ */
+final class SalesRepository {
+    private static final String INSERT =
+            "INSERT INTO sales (medicine_id, medicine_name, quantity, price_per_unit_ngwee, total_ngwee, sale_date) " +
+                    "VALUES (?, ?, ?, ?, ?, ?)";
+    // a journaled sale has already happened; an edit since then can only leave the batch empty
+    private static final String DEDUCT_STOCK =
+            "UPDATE medicines SET quantity = MAX(quantity - ?, 0) WHERE id = ?";
+    private static final String RECENT = "SELECT * FROM sales ORDER BY sale_date DESC, id DESC LIMIT ?";
+    private static final String ON_DATE = "SELECT * FROM sales WHERE sale_date = ? ORDER BY id";
+    private static final String BETWEEN = "SELECT * FROM sales WHERE sale_date BETWEEN ? AND ? ORDER BY sale_date, id";
+    private static final String LAST_INSERT_ID = "SELECT last_insert_rowid()";
+    private static final String AFTER_ID = "SELECT * FROM sales WHERE id > ? ORDER BY id";
+    private static final String ROLLUP_ADD =
+            "INSERT INTO sales_daily_rollup (sale_date, medicine_id, medicine_name, quantity, revenue_ngwee, sale_count) " +
+                    "VALUES (?, ?, ?, ?, ?, 1) ON CONFLICT (sale_date, medicine_id) DO UPDATE SET " +
+                    "medicine_name = excluded.medicine_name, quantity = quantity + excluded.quantity, " +
+                    "revenue_ngwee = revenue_ngwee + excluded.revenue_ngwee, sale_count = sale_count + 1";
+    private static final String JOURNAL_APPLIED = "SELECT applied_sequence FROM sales_journal_checkpoint WHERE id = 1";
+    private static final String SET_JOURNAL_APPLIED = "UPDATE sales_journal_checkpoint SET applied_sequence = ? WHERE id = 1";
+    private static final String ROLLUP_BETWEEN =
+            "SELECT * FROM sales_daily_rollup WHERE sale_date BETWEEN ? AND ? ORDER BY sale_date, medicine_name";
+    // the sales history the till shows first, compiled ahead by DataSession.warmUp
+    static final String[] STARTUP_QUERIES = {RECENT};
+
+    private final DataSession session;
+    private final StatementCache statements;
+
+    SalesRepository(DataSession session) {
+        this.session = session;
+        this.statements = session.statements;
+    }
+
+    /**
+     * Writes sales that were already taken from stock in the
+     * {@link StockLedger}, batch by batch, as replayed from the
+     * {@link SalesJournal}, and adds them to the daily rollup. Stock is
+     * deducted without a check, so a sale that has been acknowledged is never
+     * refused; it joins the caller's transaction, one batch per statement.
+     * Fills in the new ids.
+     */
+    List<Sale> recordSold(List<Sale> sales) throws SQLException {
+        return session.inTransaction(() -> writeSales(sales));
+    }
+
+    // caller holds the transaction
+    private List<Sale> writeSales(List<Sale> sales) throws SQLException {
+        PreparedStatement deduct = statements.prepare(DEDUCT_STOCK);
+        try {
+            for (Sale sale : sales) {
+                deduct.setInt(1, sale.quantity);
+                deduct.setInt(2, sale.medicineId);
+                deduct.addBatch();
+            }
+            deduct.executeBatch();
+        } finally {
+            deduct.clearBatch();
+        }
+
+        PreparedStatement insert = statements.prepare(INSERT);
+        try {
+            for (Sale sale : sales) {
+                insert.setInt(1, sale.medicineId);
+                insert.setString(2, sale.medicineName);
+                insert.setInt(3, sale.quantity);
+                insert.setLong(4, sale.unitPriceNgwee);
+                insert.setLong(5, sale.totalNgwee);
+                insert.setString(6, sale.saleDate);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        } finally {
+            insert.clearBatch();
+        }
+        // this connection is the only writer, so one batch in one transaction gets consecutive ids
+        int lastId = lastInsertId();
+        for (int i = 0; i < sales.size(); i++) {
+            sales.get(i).id = lastId - sales.size() + 1 + i;
+        }
+
+        PreparedStatement rollup = statements.prepare(ROLLUP_ADD);
+        try {
+            for (Sale sale : sales) {
+                rollup.setString(1, sale.saleDate);
+                rollup.setInt(2, sale.medicineId);
+                rollup.setString(3, sale.medicineName);
+                rollup.setInt(4, sale.quantity);
+                rollup.setLong(5, sale.totalNgwee);
+                rollup.addBatch();
+            }
+            rollup.executeBatch();
+        } finally {
+            rollup.clearBatch();
+        }
+        return sales;
+    }
+
+    /** The last {@link SalesJournal} sequence whose sales are in the database. */
+    long journalApplied() throws SQLException {
+        try (ResultSet rs = statements.prepare(JOURNAL_APPLIED).executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /** Moves the journal checkpoint; call in the transaction that wrote those sales. */
+    void setJournalApplied(long sequence) throws SQLException {
+        PreparedStatement pstmt = statements.prepare(SET_JOURNAL_APPLIED);
+        pstmt.setLong(1, sequence);
+        pstmt.executeUpdate();
+    }
+
+    /** Creates the single-row table recording how far the sales journal has been applied. */
+    static void createJournalCheckpoint(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS sales_journal_checkpoint (" +
+                    "id INTEGER PRIMARY KEY CHECK (id = 1)," +
+                    "applied_sequence INTEGER NOT NULL)");
+            stmt.execute("INSERT OR IGNORE INTO sales_journal_checkpoint (id, applied_sequence) VALUES (1, 0)");
+        }
+    }
+
+    private int lastInsertId() throws SQLException {
+        try (ResultSet rs = statements.prepare(LAST_INSERT_ID).executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /** Every sale with an id above {@code afterId}, oldest first. */
+    void forEachAfter(int afterId, RowHandler<Sale> handler) throws SQLException {
+        PreparedStatement pstmt = statements.prepare(AFTER_ID);
+        pstmt.setInt(1, afterId);
+        forEach(pstmt, handler);
+    }
+
+    /** Per-day, per-medicine totals from the rollup, without touching raw sales. */
+    void forEachDailyTotalBetween(String startDate, String endDate, RowHandler<DailySales> handler) throws SQLException {
+        PreparedStatement pstmt = statements.prepare(ROLLUP_BETWEEN);
+        pstmt.setString(1, startDate);
+        pstmt.setString(2, endDate);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                handler.accept(DailySales.read(rs));
+            }
+        }
+    }
+
+    /** Recomputes the whole rollup from raw sales, e.g. after sales were loaded by hand. */
+    void rebuildDailyRollup() throws SQLException {
+        session.inTransaction(() -> {
+            rebuildDailyRollup(session.connection());
+            return null;
+        });
+    }
+
+    /** Creates sales_daily_rollup with revenue as REAL kwacha and backfills it; see {@link #moneyAsNgwee}. */
+    static void createDailyRollup(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS sales_daily_rollup (" +
+                    "sale_date TEXT NOT NULL," +
+                    "medicine_id INTEGER NOT NULL," +
+                    "medicine_name TEXT NOT NULL," +
+                    "quantity INTEGER NOT NULL," +
+                    "revenue REAL NOT NULL," +
+                    "sale_count INTEGER NOT NULL," +
+                    "PRIMARY KEY (sale_date, medicine_id)) WITHOUT ROWID");
+            stmt.execute("DELETE FROM sales_daily_rollup");
+            stmt.execute("INSERT INTO sales_daily_rollup " +
+                    "(sale_date, medicine_id, medicine_name, quantity, revenue, sale_count) " +
+                    "SELECT sale_date, medicine_id, MAX(medicine_name), SUM(quantity), SUM(total_amount), COUNT(*) " +
+                    "FROM sales GROUP BY sale_date, medicine_id");
+        }
+    }
+
+    /**
+     * Moves the sale amounts from REAL kwacha to INTEGER ngwee, rounding each
+     * to the ngwee, and rebuilds the rollup from them so its sums are exact.
+     */
+    static void moneyAsNgwee(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM pragma_table_info('sales') WHERE name = 'total_ngwee'")) {
+                if (rs.next() && rs.getInt(1) > 0) return; // ADD COLUMN has no IF NOT EXISTS
+            }
+            stmt.execute("ALTER TABLE sales ADD COLUMN price_per_unit_ngwee INTEGER");
+            stmt.execute("ALTER TABLE sales ADD COLUMN total_ngwee INTEGER");
+            stmt.execute("UPDATE sales SET price_per_unit_ngwee = CAST(ROUND(price_per_unit * 100) AS INTEGER), " +
+                    "total_ngwee = CAST(ROUND(total_amount * 100) AS INTEGER)");
+            stmt.execute("ALTER TABLE sales DROP COLUMN price_per_unit");
+            stmt.execute("ALTER TABLE sales DROP COLUMN total_amount");
+
+            stmt.execute("DROP TABLE IF EXISTS sales_daily_rollup");
+            stmt.execute("CREATE TABLE sales_daily_rollup (" +
+                    "sale_date TEXT NOT NULL," +
+                    "medicine_id INTEGER NOT NULL," +
+                    "medicine_name TEXT NOT NULL," +
+                    "quantity INTEGER NOT NULL," +
+                    "revenue_ngwee INTEGER NOT NULL," +
+                    "sale_count INTEGER NOT NULL," +
+                    "PRIMARY KEY (sale_date, medicine_id)) WITHOUT ROWID");
+        }
+        rebuildDailyRollup(connection);
+    }
+
+    private static void rebuildDailyRollup(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DELETE FROM sales_daily_rollup");
+            stmt.execute("INSERT INTO sales_daily_rollup " +
+                    "(sale_date, medicine_id, medicine_name, quantity, revenue_ngwee, sale_count) " +
+                    "SELECT sale_date, medicine_id, MAX(medicine_name), SUM(quantity), SUM(total_ngwee), COUNT(*) " +
+                    "FROM sales GROUP BY sale_date, medicine_id");
+        }
+    }
+
+    List<Sale> findRecent(int limit) throws SQLException {
+        PreparedStatement pstmt = statements.prepare(RECENT);
+        pstmt.setInt(1, limit);
+        List<Sale> rows = new ArrayList<>();
+        forEach(pstmt, rows::add);
+        return rows;
+    }
+
+    void forEachOn(String date, RowHandler<Sale> handler) throws SQLException {
+        PreparedStatement pstmt = statements.prepare(ON_DATE);
+        pstmt.setString(1, date);
+        forEach(pstmt, handler);
+    }
+
+    void forEachBetween(String startDate, String endDate, RowHandler<Sale> handler) throws SQLException {
+        PreparedStatement pstmt = statements.prepare(BETWEEN);
+        pstmt.setString(1, startDate);
+        pstmt.setString(2, endDate);
+        forEach(pstmt, handler);
+    }
+
+    private static void forEach(PreparedStatement pstmt, RowHandler<Sale> handler) throws SQLException {
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                handler.accept(Sale.read(rs));
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ordered schema migrations. The {@code schema_version} table records every
+ * step that has been applied; on startup each newer step runs in its own
+ * transaction, so an older {@code pharmacy.db} is brought up to date in place.
+ * Steps only use {@code IF NOT EXISTS} style DDL so re-running one is harmless.
+ *
+ * <p>Once a database is fully set up its {@code PRAGMA user_version} is set
+ * to the latest version, so {@link #isCurrent} can skip all of this on an
+ * ordinary launch with a single header read.
+ *
+ * <p>New steps go at the end of {@link #MIGRATIONS} with the next version
+ * number; never edit a step that has shipped.
+ */
+final class SchemaMigrations {
+
+    @FunctionalInterface
+    interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    private static final class Migration {
+        final int version;
+        final String description;
+        final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "users, medicines and sales tables", SchemaMigrations::createBaseTables),
+            new Migration(2, "medicine full-text search index", MedicineSearch::createIndex),
+            new Migration(3, "indexes for reports, low stock and the medicine grid", connection -> execute(connection,
+                    "CREATE INDEX IF NOT EXISTS idx_sales_sale_date ON sales(sale_date)",
+                    "CREATE INDEX IF NOT EXISTS idx_sales_medicine_id ON sales(medicine_id)",
+                    "CREATE INDEX IF NOT EXISTS idx_medicines_name ON medicines(name)",
+                    "CREATE INDEX IF NOT EXISTS idx_medicines_expiry_date ON medicines(expiry_date)",
+                    // covers the low-stock check, which only needs name and quantity
+                    "CREATE INDEX IF NOT EXISTS idx_medicines_quantity ON medicines(quantity, name)")),
+            new Migration(4, "lookup index for upserts on (name, batch_number)", connection -> execute(connection,
+                    "CREATE INDEX IF NOT EXISTS idx_medicines_name_batch ON medicines(name, batch_number)")),
+            new Migration(5, "daily sales rollup", SalesRepository::createDailyRollup),
+            new Migration(6, "batches by name and expiry for first-expiry-first-out sales", connection -> execute(connection,
+                    "CREATE INDEX IF NOT EXISTS idx_medicines_name_expiry ON medicines(name, expiry_date)")),
+            new Migration(7, "per-batch reorder level", MedicineRepository::addReorderLevel),
+            new Migration(8, "sales journal checkpoint", SalesRepository::createJournalCheckpoint),
+            new Migration(9, "money as integer ngwee", connection -> {
+                MedicineRepository.priceAsNgwee(connection);
+                SalesRepository.moneyAsNgwee(connection);
+            }),
+            // LIKE 'x%' only becomes an index range on a NOCASE index, as LIKE ignores ASCII case
+            new Migration(10, "case-insensitive name and batch indexes for short searches", connection -> execute(connection,
+                    "CREATE INDEX IF NOT EXISTS idx_medicines_name_nocase ON medicines(name COLLATE NOCASE)",
+                    "CREATE INDEX IF NOT EXISTS idx_medicines_batch_nocase ON medicines(batch_number COLLATE NOCASE)"))
+    );
+
+    /**
+     * Queries that must be answered from an index. Each is paired with the
+     * index its plan is expected to use.
+     */
+    private static final String[][] INDEXED_QUERIES = {
+            {"SELECT * FROM sales WHERE sale_date = '2000-01-01' ORDER BY id", "idx_sales_sale_date"},
+            {"SELECT * FROM sales WHERE sale_date BETWEEN '2000-01-01' AND '2000-01-31' ORDER BY sale_date, id", "idx_sales_sale_date"},
+            {"SELECT * FROM sales ORDER BY sale_date DESC, id DESC LIMIT 100", "idx_sales_sale_date"},
+            {"SELECT * FROM medicines WHERE expiry_date < '2000-01-01' ORDER BY expiry_date", "idx_medicines_expiry_date"},
+            {"SELECT * FROM medicines WHERE (name, id) > ('a', 1) ORDER BY name, id LIMIT 100", "idx_medicines_name"},
+            {"SELECT * FROM medicines WHERE name = 'a' AND quantity > 0 AND expiry_date >= '2000-01-01' ORDER BY expiry_date, id", "idx_medicines_name_expiry"},
+            {"SELECT * FROM medicines WHERE name LIKE 'a%' ESCAPE '\\' OR batch_number LIKE 'a%' ESCAPE '\\' ORDER BY name, id LIMIT 200", "idx_medicines_name_nocase"},
+            {"SELECT * FROM medicines WHERE name LIKE 'a%' ESCAPE '\\' OR batch_number LIKE 'a%' ESCAPE '\\' ORDER BY name, id LIMIT 200", "idx_medicines_batch_nocase"},
+            {"SELECT * FROM sales_daily_rollup WHERE sale_date BETWEEN '2000-01-01' AND '2000-01-31' ORDER BY sale_date, medicine_name", "PRIMARY KEY"},
+    };
+
+    private SchemaMigrations() {
+    }
+
+    static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    /** True when {@link #markCurrent} has run since the last migration was added; reads no table. */
+    static boolean isCurrent(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() && rs.getInt(1) == latestVersion();
+        }
+    }
+
+    /** Records that the schema and seed data are complete at the latest version. */
+    static void markCurrent(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA user_version = " + latestVersion());
+        }
+    }
+
+    /** The highest applied version, 0 for a database that predates versioning. */
+    static int currentVersion(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INTEGER PRIMARY KEY," +
+                    "description TEXT NOT NULL," +
+                    "applied_at TEXT NOT NULL)");
+            try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /** Applies every pending step and returns how many ran. */
+    static int migrate(Connection connection) throws SQLException {
+        int current = currentVersion(connection);
+        int applied = 0;
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version <= current) continue;
+
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                migration.step.apply(connection);
+                try (PreparedStatement pstmt = connection.prepareStatement(
+                        "INSERT INTO schema_version (version, description, applied_at) VALUES (?, ?, ?)")) {
+                    pstmt.setInt(1, migration.version);
+                    pstmt.setString(2, migration.description);
+                    pstmt.setString(3, LocalDateTime.now().toString());
+                    pstmt.executeUpdate();
+                }
+                connection.commit();
+                applied++;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw new SQLException("Schema migration " + migration.version + " (" +
+                        migration.description + ") failed: " + e.getMessage(), e);
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Runs {@code EXPLAIN QUERY PLAN} over the hot report and grid queries and
+     * lists every one whose plan does not use its expected index.
+     */
+    static List<String> checkQueryPlans(Connection connection) throws SQLException {
+        List<String> problems = new ArrayList<>();
+        try (Statement stmt = connection.createStatement()) {
+            for (String[] query : INDEXED_QUERIES) {
+                StringBuilder plan = new StringBuilder();
+                try (ResultSet rs = stmt.executeQuery("EXPLAIN QUERY PLAN " + query[0])) {
+                    while (rs.next()) {
+                        plan.append(rs.getString("detail")).append("; ");
+                    }
+                }
+                if (plan.indexOf(query[1]) < 0) {
+                    problems.add(query[0] + " -> " + plan);
+                }
+            }
+        }
+        return problems;
+    }
+
+    private static void createBaseTables(Connection connection) throws SQLException {
+        execute(connection,
+                // Create usrs table
+                "CREATE TABLE IF NOT EXISTS users (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "username TEXT UNIQUE NOT NULL," +
+                        "password TEXT NOT NULL)",
+                // Create medicines table
+                "CREATE TABLE IF NOT EXISTS medicines (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "name TEXT NOT NULL," +
+                        "batch_number TEXT NOT NULL," +
+                        "expiry_date DATE NOT NULL," +
+                        "quantity INTEGER NOT NULL," +
+                        "price REAL NOT NULL)",
+                // Create sales table
+                "CREATE TABLE IF NOT EXISTS sales (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "medicine_id INTEGER," +
+                        "medicine_name TEXT," +
+                        "quantity INTEGER," +
+                        "price_per_unit REAL," +
+                        "total_amount REAL," +
+                        "sale_date DATE," +
+                        "FOREIGN KEY(medicine_id) REFERENCES medicines(id))");
+    }
+
+    private static void execute(Connection connection, String... statements) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            for (String sql : statements) {
+                stmt.execute(sql);
+            }
+        }
+    }
+}
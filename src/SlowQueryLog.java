@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Logs every statement slower than a threshold with its bound parameters,
+ * the row count and SQLite's {@code EXPLAIN QUERY PLAN}, so full scans on a
+ * large database can be found from what actually ran. Fed by
+ * {@link TimedStatement}, on the statement's own thread and connection.
+ *
+ * <p>The threshold is {@code -Dpharmacy.slowQueryMillis} (100 by default,
+ * negative turns the log off) and can be changed on a running till through
+ * {@link LatencyMXBean}. Entries go to the {@code pharmacy.slow-queries}
+ * logger, which unless configured otherwise writes to rotating files named
+ * by {@code -Dpharmacy.slowQueryLog}, 5 MB each, five kept. Off along with
+ * the rest of {@link Metrics}.
+ */
+final class SlowQueryLog {
+    static final String DEFAULT_FILES = "pharmacy-slow-queries.%g.log";
+    private static final int FILE_LIMIT = 5 << 20;
+    private static final int FILE_COUNT = 5;
+    private static final int MAX_VALUE_LENGTH = 200; // a pasted blob shouldn't swamp the log
+
+    private static final Logger LOG = Logger.getLogger("pharmacy.slow-queries");
+    private static volatile long thresholdNanos = Long.getLong("pharmacy.slowQueryMillis", 100) * 1_000_000L;
+    private static boolean opened;
+
+    private SlowQueryLog() {
+    }
+
+    static boolean isSlow(long nanos) {
+        long threshold = thresholdNanos;
+        return threshold >= 0 && nanos >= threshold;
+    }
+
+    static long thresholdMillis() {
+        return thresholdNanos / 1_000_000L;
+    }
+
+    static void setThresholdMillis(long millis) {
+        thresholdNanos = millis * 1_000_000L;
+    }
+
+    /**
+     * Writes one entry. {@code parameters} are the values bound when it ran,
+     * by index from 1, the last row's for a batch of {@code batchSize};
+     * when {@code redacted} they are left out and only their positions shown.
+     * Must be called on the thread that owns {@code connection}.
+     */
+    static void log(Connection connection, String sql, Object[] parameters, boolean redacted,
+                    int batchSize, long rows, long nanos, boolean failed) {
+        StringBuilder entry = new StringBuilder();
+        entry.append(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS))
+                .append(String.format("  %.1f ms, %,d rows", nanos / 1e6, rows));
+        if (batchSize > 0) entry.append(", batch of ").append(batchSize);
+        if (failed) entry.append(", FAILED");
+        entry.append(", ").append(Thread.currentThread().getName()).append('\n');
+        entry.append("  SQL:    ").append(sql).append('\n');
+        entry.append("  Params: ");
+        appendParameters(entry, parameters, redacted);
+        entry.append('\n');
+        try {
+            appendPlan(entry, connection, sql, parameters);
+        } catch (SQLException e) {
+            entry.append("  Plan:   unavailable, ").append(e.getMessage()).append('\n');
+        }
+        logger().info(entry.toString());
+    }
+
+    private static void appendParameters(StringBuilder entry, Object[] parameters, boolean redacted) {
+        boolean any = false;
+        for (int i = 1; parameters != null && i < parameters.length; i++) {
+            if (any) entry.append(", ");
+            entry.append('[').append(i).append("] ");
+            Object value = parameters[i];
+            if (redacted) {
+                entry.append("<redacted>");
+            } else if (value == null) {
+                entry.append("NULL");
+            } else if (value instanceof String) {
+                String text = (String) value;
+                entry.append('\'').append(text.length() > MAX_VALUE_LENGTH ? text.substring(0, MAX_VALUE_LENGTH) + "..." : text).append('\'');
+            } else if (value instanceof byte[]) {
+                entry.append("<").append(((byte[]) value).length).append(" bytes>");
+            } else {
+                entry.append(value);
+            }
+            any = true;
+        }
+        if (!any) entry.append("none");
+    }
+
+    // the plan as SQLite prints it, nested steps indented under their parent
+    private static void appendPlan(StringBuilder entry, Connection connection, String sql, Object[] parameters)
+            throws SQLException {
+        try (PreparedStatement explain = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            for (int i = 1; parameters != null && i < parameters.length; i++) {
+                explain.setObject(i, parameters[i]);
+            }
+            Map<Integer, Integer> depths = new HashMap<>();
+            boolean first = true;
+            try (ResultSet rs = explain.executeQuery()) {
+                while (rs.next()) {
+                    int depth = depths.getOrDefault(rs.getInt("parent"), -1) + 1;
+                    depths.put(rs.getInt("id"), depth);
+                    entry.append(first ? "  Plan:   " : "          ").append("  ".repeat(depth))
+                            .append(rs.getString("detail")).append('\n');
+                    first = false;
+                }
+            }
+            if (first) entry.append("  Plan:   (none)\n");
+        }
+    }
+
+    // files are only created once something is slow
+    private static synchronized Logger logger() {
+        if (!opened) {
+            opened = true;
+            LOG.setUseParentHandlers(false);
+            if (LOG.getHandlers().length == 0) {
+                try {
+                    FileHandler files = new FileHandler(System.getProperty("pharmacy.slowQueryLog", DEFAULT_FILES),
+                            FILE_LIMIT, FILE_COUNT, true);
+                    files.setFormatter(new Formatter() {
+                        @Override
+                        public String format(LogRecord record) {
+                            return record.getMessage() + '\n';
+                        }
+                    });
+                    LOG.addHandler(files);
+                } catch (IOException e) {
+                    System.err.println("Could not open the slow query log: " + e.getMessage());
+                    LOG.setUseParentHandlers(true); // fall back to the console
+                }
+            }
+            LOG.setLevel(Level.INFO);
+        }
+        return LOG;
+    }
+}
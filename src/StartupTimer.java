@@ -0,0 +1,36 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Time to first interactive: from JVM start until the login frame is on
+ * screen and the database is ready to check a login, whichever comes last.
+ * Printed once at startup and recorded as the {@code startup} action in
+ * {@link Metrics}. Confined to the EDT.
+ */
+final class StartupTimer {
+    private long shownAt = -1; // milliseconds since JVM start
+    private long readyAt = -1;
+    private boolean reported;
+
+    void loginShown() {
+        if (shownAt < 0) shownAt = uptime();
+        report();
+    }
+
+    void databaseReady() {
+        if (readyAt < 0) readyAt = uptime();
+        report();
+    }
+
+    private void report() {
+        if (reported || shownAt < 0 || readyAt < 0) return;
+        reported = true;
+        long interactive = Math.max(shownAt, readyAt);
+        System.out.printf("Ready in %d ms (login shown at %d ms, database ready at %d ms)%n",
+                interactive, shownAt, readyAt);
+        Metrics.recordAction("startup", interactive * 1_000_000L);
+    }
+
+    static long uptime() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+}
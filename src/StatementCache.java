@@ -0,0 +1,105 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of prepared statements for one connection, keyed by SQL
+ * text. Repeated operations reuse the compiled statement instead of having
+ * SQLite parse the SQL again, and statements pushed out of the cache are
+ * closed so native handles don't pile up over a long shift.
+ *
+ * <p>Statements handed out stay owned by the cache: callers bind parameters
+ * and close the {@code ResultSet}, never the statement. Like its connection,
+ * a cache is confined to one thread; only the counters may be read elsewhere,
+ * and {@link Metrics} sums them over every open cache for {@link LatencyMXBean}.
+ * Each statement is wrapped in a {@link TimedStatement} when it is compiled.
+ */
+final class StatementCache implements AutoCloseable {
+    static final int DEFAULT_CAPACITY = 64;
+
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements;
+    private volatile long hits;
+    private volatile long misses;
+
+    StatementCache(Connection connection, int capacity) {
+        this.connection = connection;
+        this.statements = new LinkedHashMap<>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= capacity) return false;
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+        Metrics.track(this);
+    }
+
+    /** The cached statement for {@code sql} with its parameters cleared, compiling it on a miss. */
+    PreparedStatement prepare(String sql) throws SQLException {
+        return prepare(sql, false);
+    }
+
+    /**
+     * Like {@link #prepare}, but the values bound to the statement are never
+     * kept or written to the {@link SlowQueryLog}. For statements that take
+     * credentials; the first call for a given SQL text decides.
+     */
+    PreparedStatement prepareRedacted(String sql) throws SQLException {
+        return prepare(sql, true);
+    }
+
+    private PreparedStatement prepare(String sql, boolean redacted) throws SQLException {
+        PreparedStatement pstmt = statements.get(sql);
+        if (pstmt != null && !pstmt.isClosed()) {
+            hits++;
+            pstmt.clearParameters();
+            return pstmt;
+        }
+        misses++;
+        pstmt = connection.prepareStatement(sql);
+        if (Metrics.ENABLED) pstmt = TimedStatement.wrap(pstmt, sql, redacted);
+        statements.put(sql, pstmt);
+        return pstmt;
+    }
+
+    Connection connection() {
+        return connection;
+    }
+
+    long hits() {
+        return hits;
+    }
+
+    long misses() {
+        return misses;
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    @Override
+    public void close() {
+        for (PreparedStatement pstmt : statements.values()) {
+            closeQuietly(pstmt);
+        }
+        statements.clear();
+        Metrics.untrack(this);
+    }
+
+    @Override
+    public String toString() {
+        return "StatementCache[size=" + statements.size() + ", hits=" + hits + ", misses=" + misses + "]";
+    }
+
+    private static void closeQuietly(PreparedStatement pstmt) {
+        try {
+            pstmt.close();
+        } catch (SQLException ignored) {
+            // the statement is being dropped anyway
+        }
+    }
+}
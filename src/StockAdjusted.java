@@ -0,0 +1,17 @@
+/**
+ * A medicine's stock changed without any other field changing, e.g. by a
+ * sale. Carries the row as committed. Only the latest per medicine is
+ * delivered.
+ */
+final class StockAdjusted implements EventBus.Coalescing {
+    final Medicine medicine;
+
+    StockAdjusted(Medicine medicine) {
+        this.medicine = medicine;
+    }
+
+    @Override
+    public Object coalesceKey() {
+        return medicine.id;
+    }
+}
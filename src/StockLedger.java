@@ -0,0 +1,377 @@
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The authoritative count of sellable stock, held in memory so tills can
+ * reserve units the moment they go into a basket. Stock is reserved by
+ * medicine name from the unexpired batches that expire first, and a
+ * reservation is priced batch by batch. The units stay held until the
+ * journal has written the sale (then they are gone from stock) or the line
+ * is dropped (then they are free again). Two tills can never hold the same
+ * unit, so a basket that reserved its lines cannot fail for lack of stock.
+ *
+ * <p>Batches are spread over {@link #STRIPES} locks by id. A reservation
+ * locks only the stripes of that medicine's batches, so checkouts of
+ * different medicines never wait on each other and none of them wait on the
+ * database. A reservation is sold by appending its priced sales to the
+ * {@link SalesJournal}; the units stay held until the journal has written
+ * them to the database.
+ *
+ * <p>The stock counts only change on the writer thread, in write order:
+ * when a reserved sale is written, and when a {@link MedicineChanged} event
+ * asks for a batch to be re-read. An event that arrives late can therefore
+ * never roll a count back.
+ */
+final class StockLedger implements AutoCloseable {
+    static final int STRIPES = 64;
+    private static final int UNKNOWN_EXPIRY = Integer.MIN_VALUE; // never sellable
+    private static final Batch[] NO_BATCHES = new Batch[0];
+
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final IntIntMap stock = new IntIntMap(64);  // as last written to the database
+        final IntIntMap held = new IntIntMap(64);   // reserved by baskets, or sold and not yet written
+        final IntIntMap expiry = new IntIntMap(64); // epoch day
+    }
+
+    private final DataAccessExecutor dataAccess;
+    private final EventBus.Subscriptions subscriptions;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final Map<String, Batch[]> batchesByName = new ConcurrentHashMap<>(); // in sale order
+
+    // writer thread only; source of batchesByName
+    private final Map<Integer, Batch> batches = new HashMap<>();
+    private final Map<String, List<Batch>> batchLists = new HashMap<>();
+
+    // immutable, so the published arrays can be read from any thread
+    private static final class Batch {
+        final int id;
+        final String name;
+        final int expiryDay;
+        final long priceNgwee;
+
+        Batch(Medicine med) {
+            this.id = med.id;
+            this.name = med.name;
+            this.expiryDay = expiryDay(med.expiryDate);
+            this.priceNgwee = med.priceNgwee;
+        }
+    }
+
+    private static final class Allocation {
+        final Batch batch;
+        final int units;
+
+        Allocation(Batch batch, int units) {
+            this.batch = batch;
+            this.units = units;
+        }
+    }
+
+    StockLedger(DataAccessExecutor dataAccess, EventBus events) {
+        this.dataAccess = dataAccess;
+        this.subscriptions = events.newSubscriptions();
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /** Loads the stock on the writer thread and starts following edits. Call after the schema is in place. */
+    void start() {
+        subscriptions.on(MedicineChanged.class, e -> dataAccess.write(db -> {
+            if (e.isBulk()) reload(db);
+            else refresh(db, e.delta.medicine.id);
+            return null;
+        }));
+        dataAccess.write(db -> {
+            reload(db);
+            return null;
+        });
+    }
+
+    Reservation newReservation() {
+        return new Reservation();
+    }
+
+    /** Units of {@code name} that can still be reserved today. */
+    int available(String name) {
+        Batch[] batches = batchesByName.getOrDefault(name, NO_BATCHES);
+        int today = (int) LocalDate.now().toEpochDay();
+        lock(batches);
+        try {
+            int total = 0;
+            for (Batch batch : batches) {
+                total += availableLocked(batch.id, today);
+            }
+            return total;
+        } finally {
+            unlock(batches);
+        }
+    }
+
+    /**
+     * The units one basket holds, batch by batch. Used from one thread at a
+     * time, e.g. the till's EDT, except for {@link #persisted}, which runs on
+     * the writer thread after the basket has been handed over.
+     */
+    final class Reservation {
+        private final List<Allocation> allocations = new ArrayList<>();
+
+        /**
+         * Holds {@code quantity} more of {@code name}, first-expiry-first-out
+         * across its unexpired batches. Returns false, holding nothing, if
+         * there is not enough.
+         */
+        boolean reserve(String name, int quantity) {
+            if (quantity <= 0) throw new IllegalArgumentException("Please enter a valid quantity!");
+            Batch[] batches = batchesByName.getOrDefault(name, NO_BATCHES);
+            int today = (int) LocalDate.now().toEpochDay();
+            lock(batches);
+            try {
+                int total = 0;
+                for (Batch batch : batches) {
+                    total += availableLocked(batch.id, today);
+                }
+                if (total < quantity) return false;
+
+                int remaining = quantity;
+                for (int i = 0; i < batches.length && remaining > 0; i++) {
+                    int take = Math.min(remaining, availableLocked(batches[i].id, today));
+                    if (take <= 0) continue;
+                    stripe(batches[i].id).held.add(batches[i].id, take);
+                    allocations.add(new Allocation(batches[i], take));
+                    remaining -= take;
+                }
+                return true;
+            } finally {
+                unlock(batches);
+            }
+        }
+
+        /** Frees everything held for {@code name}, e.g. when its basket line is removed. */
+        void release(String name) {
+            for (int i = allocations.size() - 1; i >= 0; i--) {
+                if (!allocations.get(i).batch.name.equals(name)) continue;
+                unhold(allocations.remove(i));
+            }
+        }
+
+        /** Frees everything this reservation holds. */
+        void releaseAll() {
+            for (Allocation allocation : allocations) {
+                unhold(allocation);
+            }
+            allocations.clear();
+        }
+
+        /**
+         * The sales this reservation makes on {@code saleDate}: one per batch,
+         * at the batch's price when its units were reserved.
+         */
+        List<Sale> sales(String saleDate) {
+            Map<Integer, Sale> byBatch = new LinkedHashMap<>();
+            for (Allocation allocation : allocations) {
+                Sale sale = byBatch.computeIfAbsent(allocation.batch.id, id -> {
+                    Sale s = new Sale();
+                    s.medicineId = id;
+                    s.medicineName = allocation.batch.name;
+                    s.unitPriceNgwee = allocation.batch.priceNgwee;
+                    s.saleDate = saleDate;
+                    return s;
+                });
+                sale.quantity += allocation.units;
+                sale.totalNgwee = sale.quantity * sale.unitPriceNgwee;
+            }
+            return new ArrayList<>(byBatch.values());
+        }
+
+        /**
+         * The sale was written and {@code sold} are its batches as committed:
+         * the held units become the new stock counts in one step, so the
+         * available total never jumps. Writer thread only.
+         */
+        void persisted(List<Medicine> sold) {
+            int[] ids = new int[allocations.size() + sold.size()];
+            for (int i = 0; i < allocations.size(); i++) {
+                ids[i] = allocations.get(i).batch.id;
+            }
+            for (int i = 0; i < sold.size(); i++) {
+                ids[allocations.size() + i] = sold.get(i).id;
+            }
+            lock(ids);
+            try {
+                for (Allocation allocation : allocations) {
+                    stripe(allocation.batch.id).held.add(allocation.batch.id, -allocation.units);
+                }
+                for (Medicine batch : sold) {
+                    stripe(batch.id).stock.put(batch.id, batch.quantity);
+                }
+            } finally {
+                unlock(ids);
+            }
+            allocations.clear();
+        }
+
+        private void unhold(Allocation allocation) {
+            Stripe stripe = stripe(allocation.batch.id);
+            stripe.lock.lock();
+            try {
+                stripe.held.add(allocation.batch.id, -allocation.units);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    // caller holds the stripe lock
+    private int availableLocked(int id, int today) {
+        Stripe stripe = stripe(id);
+        if (stripe.expiry.get(id, UNKNOWN_EXPIRY) < today) return 0;
+        return Math.max(0, stripe.stock.get(id, 0) - stripe.held.get(id, 0));
+    }
+
+    private void reload(DataSession db) throws SQLException {
+        List<Medicine> rows = new ArrayList<>();
+        db.medicines.forEachStockLevel(rows::add);
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.stock.clear(); // held units belong to baskets and survive a reload
+                stripe.expiry.clear();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        batches.clear();
+        batchLists.clear();
+        for (Medicine med : rows) {
+            setStock(med);
+            Batch batch = new Batch(med);
+            batches.put(med.id, batch);
+            batchLists.computeIfAbsent(med.name, name -> new ArrayList<>()).add(batch);
+        }
+        batchesByName.clear();
+        for (String name : batchLists.keySet()) {
+            publishBatches(name);
+        }
+    }
+
+    private void refresh(DataSession db, int id) throws SQLException {
+        Medicine med = db.medicines.findById(id);
+        Batch previous = batches.remove(id);
+        if (previous != null) {
+            batchLists.get(previous.name).remove(previous);
+        }
+        if (med == null) {
+            Stripe stripe = stripe(id);
+            stripe.lock.lock();
+            try {
+                stripe.stock.remove(id);
+                stripe.expiry.remove(id);
+            } finally {
+                stripe.lock.unlock();
+            }
+        } else {
+            setStock(med);
+            Batch batch = new Batch(med);
+            batches.put(id, batch);
+            batchLists.computeIfAbsent(med.name, name -> new ArrayList<>()).add(batch);
+            publishBatches(med.name);
+        }
+        if (previous != null && (med == null || !previous.name.equals(med.name))) {
+            publishBatches(previous.name);
+        }
+    }
+
+    private void setStock(Medicine med) {
+        Stripe stripe = stripe(med.id);
+        stripe.lock.lock();
+        try {
+            stripe.stock.put(med.id, med.quantity);
+            stripe.expiry.put(med.id, expiryDay(med.expiryDate));
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private void publishBatches(String name) {
+        List<Batch> list = batchLists.get(name);
+        if (list == null || list.isEmpty()) {
+            batchLists.remove(name);
+            batchesByName.remove(name);
+            return;
+        }
+        list.sort((a, b) -> a.expiryDay != b.expiryDay
+                ? Integer.compare(a.expiryDay, b.expiryDay) : Integer.compare(a.id, b.id));
+        batchesByName.put(name, list.toArray(new Batch[0]));
+    }
+
+    private static int expiryDay(String date) {
+        try {
+            return (int) LocalDate.parse(date).toEpochDay();
+        } catch (DateTimeParseException | NullPointerException e) {
+            return UNKNOWN_EXPIRY;
+        }
+    }
+
+    private Stripe stripe(int id) {
+        return stripes[stripeIndex(id)];
+    }
+
+    private void lock(Batch[] batches) {
+        lock(idsOf(batches));
+    }
+
+    private void unlock(Batch[] batches) {
+        unlock(idsOf(batches));
+    }
+
+    private static int[] idsOf(Batch[] batches) {
+        int[] ids = new int[batches.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = batches[i].id;
+        }
+        return ids;
+    }
+
+    // stripes are always taken in index order, so two reservations can never deadlock
+    private void lock(int[] ids) {
+        boolean[] needed = stripesOf(ids);
+        for (int i = 0; i < STRIPES; i++) {
+            if (needed[i]) stripes[i].lock.lock();
+        }
+    }
+
+    private void unlock(int[] ids) {
+        boolean[] needed = stripesOf(ids);
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            if (needed[i]) stripes[i].lock.unlock();
+        }
+    }
+
+    private boolean[] stripesOf(int[] ids) {
+        boolean[] needed = new boolean[STRIPES];
+        for (int id : ids) {
+            needed[stripeIndex(id)] = true;
+        }
+        return needed;
+    }
+
+    // ids are handed out in sequence, so the low bits already spread them evenly
+    private static int stripeIndex(int id) {
+        return Math.floorMod(id, STRIPES);
+    }
+
+    @Override
+    public void close() {
+        subscriptions.close();
+    }
+}
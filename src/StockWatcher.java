@@ -0,0 +1,139 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps every batch's stock in memory and raises a {@link LowStockAlert}
+ * the moment a batch falls to its reorder level, and again when it recovers.
+ * The medicines table is read once at startup; after that the counters
+ * follow {@link StockAdjusted} events, which every sale publishes for the
+ * batches it touched, and {@link MedicineChanged} events from edits, deletes
+ * and imports. Checking a batch is a probe into a primitive map, never a
+ * query.
+ *
+ * <p>Events that arrive while the table is being read are held back and
+ * applied on top of it once it is in, so an older snapshot never undoes a
+ * newer sale.
+ *
+ * <p>Handlers run on the event bus's delivery thread; the methods are
+ * synchronized so the low-stock list can be read from anywhere.
+ */
+final class StockWatcher implements AutoCloseable {
+    private final DataAccessExecutor dataAccess;
+    private final EventBus events;
+    private final EventBus.Subscriptions subscriptions;
+
+    // guarded by this
+    private final IntIntMap stock = new IntIntMap(1024);
+    private final Map<Integer, LowStockAlert> low = new HashMap<>(); // only the batches at or below their level
+    private int loads;                  // reloads started; only the latest one's rows are used
+    private List<Runnable> heldBack;    // changes that arrived while a reload was running, else null
+
+    StockWatcher(DataAccessExecutor dataAccess, EventBus events) {
+        this.dataAccess = dataAccess;
+        this.events = events;
+        this.subscriptions = events.newSubscriptions();
+    }
+
+    /** Loads the counters once and starts following changes. Call after the schema is in place. */
+    void start() {
+        subscriptions
+                .on(MedicineChanged.class, e -> {
+                    if (e.isBulk()) reload();
+                    else if (e.delta.kind == MedicineDelta.Kind.DELETED) apply(() -> forget(e.delta.medicine.id));
+                    else apply(() -> update(e.delta.medicine));
+                })
+                .on(StockAdjusted.class, e -> apply(() -> update(e.medicine)));
+        reload();
+    }
+
+    /** The batches currently at or below their reorder level, lowest stock first. */
+    synchronized List<LowStockAlert> lowStock() {
+        List<LowStockAlert> rows = new ArrayList<>(low.values());
+        rows.sort((a, b) -> a.quantity != b.quantity
+                ? Integer.compare(a.quantity, b.quantity) : a.name.compareTo(b.name));
+        return rows;
+    }
+
+    /** The last known stock of a batch, or -1 if it is not known. */
+    synchronized int stockOf(int medicineId) {
+        return stock.get(medicineId, -1);
+    }
+
+    private synchronized void apply(Runnable change) {
+        if (heldBack != null) {
+            heldBack.add(change);
+        } else {
+            change.run();
+        }
+    }
+
+    private void reload() {
+        int load;
+        synchronized (this) {
+            load = ++loads;
+            if (heldBack == null) heldBack = new ArrayList<>();
+        }
+        dataAccess.read(db -> {
+            List<Medicine> rows = new ArrayList<>();
+            db.medicines.forEachStockLevel(rows::add);
+            return rows;
+        }).thenAccept(rows -> replaceAll(load, rows)).exceptionally(e -> {
+            System.err.println("Stock watcher could not load medicines: " + e);
+            replaceAll(load, null); // keep what we had, plus the changes since
+            return null;
+        });
+    }
+
+    // rows is null when the read failed
+    private synchronized void replaceAll(int load, List<Medicine> rows) {
+        if (load != loads) return; // a newer reload is running and will bring these changes too
+        if (rows != null) {
+            List<Integer> stale = new ArrayList<>(low.keySet());
+            stock.clear();
+            for (Medicine med : rows) {
+                update(med);
+            }
+            for (Integer id : stale) {
+                if (!stock.containsKey(id)) forget(id);
+            }
+        }
+        // the rows may predate these; events arrive in commit order, so the last one for a batch is current
+        List<Runnable> changes = heldBack;
+        heldBack = null;
+        for (Runnable change : changes) {
+            change.run();
+        }
+    }
+
+    private synchronized void update(Medicine med) {
+        stock.put(med.id, med.quantity);
+        boolean isLow = med.quantity <= med.reorderLevel;
+        LowStockAlert previous = low.get(med.id);
+        if (!isLow && previous == null) return;
+
+        LowStockAlert alert = new LowStockAlert(med.id, med.name, med.batchNumber,
+                med.quantity, med.reorderLevel, isLow);
+        if (isLow) {
+            low.put(med.id, alert);
+        } else {
+            low.remove(med.id);
+        }
+        events.publish(alert); // while a batch stays low this keeps the panel's numbers current
+    }
+
+    private synchronized void forget(int medicineId) {
+        stock.remove(medicineId);
+        LowStockAlert previous = low.remove(medicineId);
+        if (previous != null) {
+            events.publish(new LowStockAlert(medicineId, previous.name, previous.batchNumber,
+                    previous.quantity, previous.reorderLevel, false));
+        }
+    }
+
+    @Override
+    public void close() {
+        subscriptions.close();
+    }
+}
@@ -0,0 +1,192 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Wraps a cached {@link PreparedStatement} so each execution is timed into
+ * {@link Metrics}. A query runs from {@code executeQuery} until its result
+ * set is closed, since SQLite does most of the work while rows are stepped
+ * through, and counts the rows read; an update or batch counts the rows it
+ * changed. Everything else passes straight through, except that bound
+ * parameters are remembered so a statement slower than the threshold can be
+ * written to the {@link SlowQueryLog} with the values it ran with. A
+ * statement wrapped as redacted keeps only which parameters were bound.
+ *
+ * <p>Built once per statement by the {@link StatementCache}, so the wrapping
+ * itself costs nothing per call beyond the proxy dispatch.
+ */
+final class TimedStatement implements InvocationHandler {
+    private final PreparedStatement statement;
+    private final String sql;
+    private final Metrics.Timer timer;
+    private final boolean redacted;
+    private Object[] parameters = new Object[8]; // by index from 1, as bound
+    private int bound;                           // highest index bound
+    private int batched;
+
+    private TimedStatement(PreparedStatement statement, String sql, boolean redacted) {
+        this.statement = statement;
+        this.sql = sql;
+        this.timer = Metrics.query(sql);
+        this.redacted = redacted;
+    }
+
+    static PreparedStatement wrap(PreparedStatement statement, String sql, boolean redacted) {
+        return (PreparedStatement) Proxy.newProxyInstance(TimedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, new TimedStatement(statement, sql, redacted));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (args != null) {
+            if (args.length >= 2 && args[0] instanceof Integer && method.getName().startsWith("set")) {
+                bind((Integer) args[0], method.getName().equals("setNull") ? null : args[1]);
+            }
+            return call(statement, method, args); // the SQL-taking Statement overloads aren't ours to time
+        }
+        switch (method.getName()) {
+            case "executeQuery": {
+                Execution execution = new Execution();
+                ResultSet rs;
+                try {
+                    rs = statement.executeQuery();
+                } catch (SQLException | RuntimeException e) {
+                    execution.end(0, true);
+                    throw e;
+                }
+                return Proxy.newProxyInstance(TimedStatement.class.getClassLoader(),
+                        new Class<?>[]{ResultSet.class}, new Rows(rs, execution));
+            }
+            case "executeUpdate":
+            case "executeBatch":
+            case "execute": {
+                Execution execution = new Execution();
+                boolean failed = true;
+                long rows = 0;
+                try {
+                    Object result = call(statement, method, null);
+                    rows = changed(result);
+                    failed = false;
+                    return result;
+                } finally {
+                    execution.end(rows, failed);
+                }
+            }
+            case "clearParameters":
+                Arrays.fill(parameters, null);
+                bound = 0;
+                return call(statement, method, null);
+            case "addBatch":
+                batched++;
+                return call(statement, method, null);
+            case "clearBatch":
+                batched = 0;
+                return call(statement, method, null);
+            default:
+                return call(statement, method, null);
+        }
+    }
+
+    private void bind(int index, Object value) {
+        if (index >= parameters.length) parameters = Arrays.copyOf(parameters, Math.max(index + 1, parameters.length * 2));
+        parameters[index] = redacted ? null : value;
+        bound = Math.max(bound, index);
+    }
+
+    private static long changed(Object result) {
+        if (result instanceof Integer) return (Integer) result;
+        if (result instanceof int[]) {
+            long rows = 0;
+            for (int count : (int[]) result) {
+                if (count > 0) rows += count;
+            }
+            return rows;
+        }
+        return 0;
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    // one execution: the histogram and the JFR event
+    private final class Execution {
+        private final long started = System.nanoTime();
+        private final Metrics.SqlQueryEvent event = new Metrics.SqlQueryEvent();
+        private final int batchSize = batched;
+
+        Execution() {
+            event.begin();
+        }
+
+        void end(long rows, boolean failed) {
+            long nanos = System.nanoTime() - started;
+            timer.record(nanos, rows, failed);
+            if (SlowQueryLog.isSlow(nanos)) {
+                try {
+                    SlowQueryLog.log(statement.getConnection(), sql, Arrays.copyOf(parameters, bound + 1),
+                            redacted, batchSize, rows, nanos, failed);
+                } catch (SQLException e) {
+                    // the connection is going away; the timing is already recorded
+                }
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.sql = sql;
+                event.rows = rows;
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
+
+    // counts the rows stepped through and ends the execution on close
+    private static final class Rows implements InvocationHandler {
+        private final ResultSet rs;
+        private final Execution execution;
+        private long rows;
+        private boolean failed;
+        private boolean closed;
+
+        Rows(ResultSet rs, Execution execution) {
+            this.rs = rs;
+            this.execution = execution;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("next")) {
+                try {
+                    boolean more = rs.next();
+                    if (more) rows++;
+                    return more;
+                } catch (SQLException | RuntimeException e) {
+                    failed = true;
+                    throw e;
+                }
+            }
+            if (name.equals("close")) {
+                try {
+                    rs.close();
+                } finally {
+                    if (!closed) {
+                        closed = true;
+                        execution.end(rows, failed);
+                    }
+                }
+                return null;
+            }
+            return call(rs, method, args);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/** Login checks and the default account, against the users table. */
+final class UserRepository {
+    private static final String AUTHENTICATE = "SELECT 1 FROM users WHERE username = ? AND password = ?";
+    private static final String INSERT_IF_MISSING = "INSERT OR IGNORE INTO users (username, password) VALUES (?, ?)";
+
+    private final StatementCache statements;
+
+    UserRepository(StatementCache statements) {
+        this.statements = statements;
+    }
+
+    /** Compiles the login check into the cache ahead of the first login. */
+    void warmUp() throws SQLException {
+        statements.prepareRedacted(AUTHENTICATE);
+    }
+
+    boolean authenticate(String username, String password) throws SQLException {
+        PreparedStatement pstmt = statements.prepareRedacted(AUTHENTICATE);
+        pstmt.setString(1, username);
+        pstmt.setString(2, password);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    void insertIfMissing(String username, String password) throws SQLException {
+        PreparedStatement pstmt = statements.prepareRedacted(INSERT_IF_MISSING);
+        pstmt.setString(1, username);
+        pstmt.setString(2, password);
+        pstmt.executeUpdate();
+    }
+}